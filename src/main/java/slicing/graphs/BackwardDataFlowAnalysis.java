@@ -4,6 +4,9 @@ import org.jgrapht.graph.AbstractGraph;
 import slicing.utils.ASTUtils;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -17,7 +20,7 @@ public abstract class BackwardDataFlowAnalysis<V, E, D> {
     /** The graph on which this algorithm iterates. */
     protected final AbstractGraph<V, E> graph;
     /** A mapping of the latest value computed per node. */
-    protected final Map<V, D> vertexDataMap = new HashMap<>();
+    protected final Map<V, D> vertexDataMap = Collections.synchronizedMap(new HashMap<>());
 
     protected boolean built = false;
 
@@ -26,27 +29,142 @@ public abstract class BackwardDataFlowAnalysis<V, E, D> {
     }
 
     /** Iterate through the graph until a fixed-point is reached.
+     *  The strongly connected components of the graph are analyzed in turn, each one after the components
+     *  it has edges to, so that values are mostly propagated once. Inside a component, vertices wait
+     *  in a worklist without duplicates until no value changes.
      *  This method only performs the analysis on its first call. */
     public void analyze() {
+        analyze(null);
+    }
+
+    /** Like {@link #analyze()}, but if {@link #isParallel()}, components that do not depend on each other
+     *  are analyzed at the same time on the given executor. The caller chooses the executor, so the analysis
+     *  does not add threads of its own; with a null executor it runs on the calling thread. */
+    public void analyze(Executor executor) {
         assert !built;
-        List<V> workList = new LinkedList<>(graph.vertexSet());
         graph.vertexSet().forEach(v -> vertexDataMap.put(v, initialValue(v)));
-        while (!workList.isEmpty()) {
-            List<V> newWorkList = new LinkedList<>();
-            for (V vertex : workList) {
-                try {
-                    Set<V> mayAffectVertex = graph.outgoingEdgesOf(vertex).stream()
-                            .map(graph::getEdgeTarget).collect(Collectors.toCollection(ASTUtils::newIdentityHashSet));
-                    D newValue = compute(vertex, mayAffectVertex);
-                    if (!dataMatch(vertexDataMap.get(vertex), newValue)) {
-                        vertexDataMap.put(vertex, newValue);
-                        graph.incomingEdgesOf(vertex).stream().map(graph::getEdgeSource).forEach(newWorkList::add);
+        List<List<V>> components = stronglyConnectedComponents();
+        if (executor != null && isParallel() && components.size() > 1) {
+            analyzeInParallel(components, executor);
+        } else {
+            components.forEach(this::analyzeComponent);
+        }
+        built = true;
+    }
+
+    /** Whether independent components may be analyzed concurrently. Then {@link #compute(Object, Set)}
+     *  must be thread-safe, and the values of the other components may only be read. */
+    protected boolean isParallel() {
+        return false;
+    }
+
+    /** Iterate through a strongly connected component until a fixed-point is reached.
+     *  Vertices that change only re-queue their sources inside the component, the ones outside it are analyzed later. */
+    protected void analyzeComponent(List<V> component) {
+        Map<V, Integer> positions = new HashMap<>();
+        for (int i = 0; i < component.size(); i++)
+            positions.put(component.get(i), i);
+        BitSet workList = new BitSet(component.size());
+        workList.set(0, component.size());
+        for (int i = workList.nextSetBit(0); i >= 0; i = workList.nextSetBit(0)) {
+            workList.clear(i);
+            V vertex = component.get(i);
+            try {
+                Set<V> mayAffectVertex = graph.outgoingEdgesOf(vertex).stream()
+                        .map(graph::getEdgeTarget).collect(Collectors.toCollection(ASTUtils::newIdentityHashSet));
+                D newValue = compute(vertex, mayAffectVertex);
+                if (!dataMatch(vertexDataMap.get(vertex), newValue)) {
+                    vertexDataMap.put(vertex, newValue);
+                    for (E edge : graph.incomingEdgesOf(vertex)) {
+                        Integer position = positions.get(graph.getEdgeSource(edge));
+                        if (position != null)
+                            workList.set(position);
                     }
-                } catch (IllegalArgumentException ignored) {}
+                }
+            } catch (IllegalArgumentException ignored) {}
+        }
+    }
+
+    /** Analyze each component as soon as the components it has edges to are done. */
+    protected void analyzeInParallel(List<List<V>> components, Executor executor) {
+        Map<V, Integer> componentOf = new HashMap<>();
+        for (int c = 0; c < components.size(); c++)
+            for (V vertex : components.get(c))
+                componentOf.put(vertex, c);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int c = 0; c < components.size(); c++) {
+                List<V> component = components.get(c);
+                Set<Integer> dependencies = new HashSet<>();
+                for (V vertex : component)
+                    for (E edge : graph.outgoingEdgesOf(vertex))
+                        dependencies.add(componentOf.get(graph.getEdgeTarget(edge)));
+                dependencies.remove(c);
+                // Components are listed after all the components they depend on
+                CompletableFuture<?>[] before = dependencies.stream().map(futures::get).toArray(CompletableFuture[]::new);
+                futures.add(CompletableFuture.allOf(before).thenRunAsync(() -> analyzeComponent(component), executor));
             }
-            workList = newWorkList;
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
         }
-        built = true;
+    }
+
+    /** The strongly connected components of the graph (Tarjan's algorithm, without recursion).
+     *  Each component is listed after all the components reachable from it. */
+    protected List<List<V>> stronglyConnectedComponents() {
+        Map<V, Integer> index = new HashMap<>();
+        Map<V, Integer> lowLink = new HashMap<>();
+        Deque<V> stack = new ArrayDeque<>();
+        Set<V> onStack = new HashSet<>();
+        List<List<V>> components = new ArrayList<>();
+        Deque<V> path = new ArrayDeque<>();
+        Deque<Iterator<E>> pendingEdges = new ArrayDeque<>();
+        for (V root : graph.vertexSet()) {
+            if (index.containsKey(root))
+                continue;
+            index.put(root, index.size());
+            lowLink.put(root, index.get(root));
+            stack.push(root);
+            onStack.add(root);
+            path.push(root);
+            pendingEdges.push(graph.outgoingEdgesOf(root).iterator());
+            while (!path.isEmpty()) {
+                V vertex = path.peek();
+                Iterator<E> edges = pendingEdges.peek();
+                if (edges.hasNext()) {
+                    V target = graph.getEdgeTarget(edges.next());
+                    if (!index.containsKey(target)) {
+                        index.put(target, index.size());
+                        lowLink.put(target, index.get(target));
+                        stack.push(target);
+                        onStack.add(target);
+                        path.push(target);
+                        pendingEdges.push(graph.outgoingEdgesOf(target).iterator());
+                    } else if (onStack.contains(target)) {
+                        lowLink.put(vertex, Math.min(lowLink.get(vertex), index.get(target)));
+                    }
+                    continue;
+                }
+                path.pop();
+                pendingEdges.pop();
+                if (!path.isEmpty())
+                    lowLink.put(path.peek(), Math.min(lowLink.get(path.peek()), lowLink.get(vertex)));
+                if (lowLink.get(vertex).equals(index.get(vertex))) {
+                    List<V> component = new ArrayList<>();
+                    V member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        component.add(member);
+                    } while (member != vertex);
+                    components.add(component);
+                }
+            }
+        }
+        return components;
     }
 
     /** Checks whether the computed value has changed or not. */
@@ -1,5 +1,6 @@
 package slicing.graphs;
 
+import com.github.javaparser.Range;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
@@ -41,6 +42,10 @@ import java.util.stream.Stream;
 public class CallGraph extends DirectedPseudograph<CallGraph.Vertex, CallGraph.Edge<?>> implements Buildable<NodeList<CompilationUnit>> {
     private final Map<CallableDeclaration<?>, CFG> cfgMap;
     private final ClassGraph classGraph;
+    /** Vertices by the signature of their declaration, see {@link Vertex#matches(CallableDeclaration)}. */
+    private final Map<String, List<Vertex>> signatureIndex = new HashMap<>();
+    /** Edges by the range of their call, see {@link ASTUtils#equalsWithRange(Node, Node)}. */
+    private final Map<Optional<Range>, List<Edge<?>>> callIndex = new HashMap<>();
 
     private boolean built = false;
 
@@ -52,7 +57,7 @@ public class CallGraph extends DirectedPseudograph<CallGraph.Vertex, CallGraph.E
 
     /** Resolve a call to all its possible declarations, by using the call AST nodes stored on the edges. */
     public Stream<CallableDeclaration<?>> getCallTargets(Resolvable<? extends ResolvedMethodLikeDeclaration> call) {
-        return edgeSet().stream()
+        return callIndex.getOrDefault(((Node) call).getRange(), Collections.emptyList()).stream()
                 .filter(e -> ASTUtils.equalsWithRange(e.getCall(), call))
                 .map(this::getEdgeTarget)
                 .map(Vertex::getDeclaration)
@@ -90,7 +95,7 @@ public class CallGraph extends DirectedPseudograph<CallGraph.Vertex, CallGraph.E
 
     /** Locate the vertex that represents in this graph the given declaration. */
     protected Vertex findVertexByDeclaration(CallableDeclaration<?> declaration) {
-        Optional<Vertex> matchingVertex = vertexSet().stream()
+        Optional<Vertex> matchingVertex = signatureIndex.getOrDefault(declaration.getSignature().toString(), Collections.emptyList()).stream()
                 .filter(v -> v.matches(declaration))
                 .findFirst();
 
@@ -102,6 +107,58 @@ public class CallGraph extends DirectedPseudograph<CallGraph.Vertex, CallGraph.E
 
     }
 
+    @Override
+    public boolean addVertex(Vertex vertex) {
+        if (!super.addVertex(vertex))
+            return false;
+        signatureIndex.computeIfAbsent(vertex.getDeclaration().getSignature().toString(), k -> new LinkedList<>()).add(vertex);
+        return true;
+    }
+
+    @Override
+    public boolean removeVertex(Vertex vertex) {
+        if (!containsVertex(vertex))
+            return false;
+        // Look up the vertex in the graph, the given one may only match it
+        Vertex stored = findVertexByDeclaration(vertex.getDeclaration());
+        super.removeVertex(vertex);
+        unindex(signatureIndex, stored.getDeclaration().getSignature().toString(), stored);
+        return true;
+    }
+
+    @Override
+    public boolean addEdge(Vertex source, Vertex target, Edge<?> edge) {
+        if (!super.addEdge(source, target, edge))
+            return false;
+        callIndex.computeIfAbsent(((Node) edge.getCall()).getRange(), k -> new LinkedList<>()).add(edge);
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(Edge<?> edge) {
+        if (!super.removeEdge(edge))
+            return false;
+        unindex(callIndex, ((Node) edge.getCall()).getRange(), edge);
+        return true;
+    }
+
+    @Override
+    public Edge<?> removeEdge(Vertex source, Vertex target) {
+        Edge<?> edge = super.removeEdge(source, target);
+        if (edge != null)
+            unindex(callIndex, ((Node) edge.getCall()).getRange(), edge);
+        return edge;
+    }
+
+    private static <K, V> void unindex(Map<K, List<V>> index, K key, V value) {
+        List<V> values = index.get(key);
+        if (values == null)
+            return;
+        values.removeIf(v -> v == value);
+        if (values.isEmpty())
+            index.remove(key);
+    }
+
     @Override
     public void build(NodeList<CompilationUnit> arg) {
         if (isBuilt())
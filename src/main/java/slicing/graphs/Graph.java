@@ -1,5 +1,6 @@
 package slicing.graphs;
 
+import com.github.javaparser.Range;
 import com.github.javaparser.ast.Node;
 import org.jgrapht.graph.DirectedPseudograph;
 import slicing.arcs.Arc;
@@ -7,17 +8,46 @@ import slicing.nodes.GraphNode;
 import slicing.nodes.SyntheticNode;
 import slicing.utils.ASTUtils;
 
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /** A generic base graph with some utility methods to more easily create and locate nodes. */
 public abstract class Graph extends DirectedPseudograph<GraphNode<?>, Arc> {
+    /** Vertices by the range of their AST node, so that they can be located without a scan of the graph.
+     *  Nodes without AST node are kept under the {@code null} key. */
+    private final Map<Optional<Range>, List<GraphNode<?>>> rangeIndex = new HashMap<>();
+
     protected Graph() {
         super(null, null, false);
     }
 
+    @Override
+    public boolean addVertex(GraphNode<?> graphNode) {
+        if (!super.addVertex(graphNode))
+            return false;
+        rangeIndex.computeIfAbsent(rangeKey(graphNode.getAstNode()), k -> new LinkedList<>()).add(graphNode);
+        return true;
+    }
+
+    @Override
+    public boolean removeVertex(GraphNode<?> graphNode) {
+        if (!super.removeVertex(graphNode))
+            return false;
+        Optional<Range> key = rangeKey(graphNode.getAstNode());
+        List<GraphNode<?>> nodes = rangeIndex.get(key);
+        if (nodes != null) {
+            nodes.remove(graphNode);
+            if (nodes.isEmpty())
+                rangeIndex.remove(key);
+        }
+        return true;
+    }
+
+    private static Optional<Range> rangeKey(Node astNode) {
+        return astNode == null ? null : astNode.getRange();
+    }
+
     /** Creates and adds to the graph a normal node with the given label and AST. */
     public <T extends Node> GraphNode<T> addVertex(String label, T astNode) {
         GraphNode<T> node = new GraphNode<>(label, astNode);
@@ -31,7 +61,10 @@ public abstract class Graph extends DirectedPseudograph<GraphNode<?>, Arc> {
      *                                representing the given AST node. */
     @SuppressWarnings("unchecked")
     public <T extends Node> Optional<GraphNode<T>> findNodeByASTNode(T astNode) {
-        Set<GraphNode<?>> set = findAllNodes(n -> ASTUtils.equalsWithRangeInCU(n.getAstNode(), astNode));
+        Set<GraphNode<?>> set = new HashSet<>();
+        for (GraphNode<?> node : rangeIndex.getOrDefault(rangeKey(astNode), Collections.emptyList()))
+            if (ASTUtils.equalsWithRangeInCU(node.getAstNode(), astNode))
+                set.add(node);
         if (set.isEmpty())
             return Optional.empty();
         if (set.size() == 1)
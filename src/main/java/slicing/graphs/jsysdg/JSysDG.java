@@ -108,7 +108,7 @@ public class JSysDG extends ESSDG {
 
         @Override
         protected void createSummaryArcs() {
-            new SummaryArcAnalyzer(JSysDG.this, callGraph).analyze();
+            new SummaryArcAnalyzer(JSysDG.this, callGraph).analyze(summaryExecutor);
         }
 
         /** Adds type nodes (classes, interfaces, enums) to the SDG, along with their static fields. */
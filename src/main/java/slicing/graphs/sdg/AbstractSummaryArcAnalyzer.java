@@ -10,10 +10,13 @@ import slicing.nodes.io.FormalIONode;
 import slicing.nodes.io.OutputNode;
 
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Base class for generating and placing in an SDG the summary arcs.
+ * The formal-in nodes are computed under the read lock of the SDG and the summary arcs are added under
+ * its write lock, so subclasses whose other steps are thread-safe may analyze independent components in parallel.
  * @param <ActualIn> The type of node for actual-in nodes.
  * @param <FormalOut> The type of node for formal-out nodes.
  * @param <FormalIn> The type of node for formal-in nodes.
@@ -21,52 +24,72 @@ import java.util.stream.Stream;
 public abstract class AbstractSummaryArcAnalyzer<ActualIn extends SyntheticNode<?>, FormalOut extends SyntheticNode<?>, FormalIn extends SyntheticNode<?>>
         extends BackwardDataFlowAnalysis<CallGraph.Vertex, CallGraph.Edge<?>, Map<FormalOut, Set<FormalIn>>> {
     protected final SDG sdg;
-    
+    protected final ReadWriteLock sdgLock = new ReentrantReadWriteLock();
+    /** Output nodes by declaration, see {@link #getFormalOutNodes(CallableDeclaration)}. */
+    private volatile Map<Object, Set<FormalOut>> formalOutIndex;
+
     protected AbstractSummaryArcAnalyzer(SDG sdg, CallGraph graph) {
         super(graph);
         this.sdg = sdg;
     }
 
+    /** Compute the formal-in nodes of each output of the declaration, now that the summary arcs of
+     *  the declarations it calls are in place, and generate the summary arcs of its calls from them. */
     @Override
     protected Map<FormalOut, Set<FormalIn>> compute(CallGraph.Vertex vertex, Set<CallGraph.Vertex> predecessors) {
-        saveDeclaration(vertex);
-        return initialValue(vertex);
+        Map<FormalOut, Set<FormalIn>> value = new HashMap<>();
+        sdgLock.readLock().lock();
+        try {
+            for (var formalOut : getFormalOutNodes(vertex.getDeclaration()))
+                value.put(formalOut, computeFormalIn(formalOut));
+        } finally {
+            sdgLock.readLock().unlock();
+        }
+        sdgLock.writeLock().lock();
+        try {
+            saveDeclaration(vertex, value);
+        } finally {
+            sdgLock.writeLock().unlock();
+        }
+        return value;
     }
 
+    /** The outputs of the declaration, without formal-in nodes yet: they are computed when the vertex is analyzed. */
     @Override
     protected Map<FormalOut, Set<FormalIn>> initialValue(CallGraph.Vertex vertex) {
-        Map<FormalOut, Set<FormalIn>> value;
-        if (vertexDataMap.containsKey(vertex)) {
-            value = vertexDataMap.get(vertex);
-        } else {
-            value = new HashMap<>();
-            for (var formalOut : getFormalOutNodes(vertex.getDeclaration()))
-                value.put(formalOut, new HashSet<>());
-        }
-        value.replaceAll((key, oldValue) -> computeFormalIn(key));
+        Map<FormalOut, Set<FormalIn>> value = new HashMap<>();
+        for (var formalOut : getFormalOutNodes(vertex.getDeclaration()))
+            value.put(formalOut, new HashSet<>());
         return value;
     }
 
     /** Obtain all nodes that represent the output of a method declaration. These include formal-out,
      *  return nodes and normal/exception exit nodes (for exception handling). */
     protected Set<FormalOut> getFormalOutNodes(CallableDeclaration<?> declaration) {
-        Set<FormalOut> set = new HashSet<>();
-        Stream.concat(
-                Stream.concat(
-                        sdg.vertexSet().stream() // formal-out nodes
-                                .filter(FormalIONode.class::isInstance)
-                                .map(FormalIONode.class::cast)
-                                .filter(FormalIONode::isOutput),
-                        sdg.vertexSet().stream() // output nodes (the value returned)
-                                .filter(OutputNode.class::isInstance)
-                                .map(OutputNode.class::cast)),
-                sdg.vertexSet().stream() // normal/exception exit nodes (for exception handling)
-                        .filter(ExitNode.class::isInstance)
-                        .map(ExitNode.class::cast))
-                // Only nodes that match the current declaration
-                .filter(node -> node.getAstNode() == declaration)
-                .forEach(e -> set.add((FormalOut) e));
-        return set;
+        return new HashSet<>(getFormalOutIndex().getOrDefault(declaration, Collections.emptySet()));
+    }
+
+    /** Index the output nodes of all declarations in one pass over the SDG. Computing summary arcs does not
+     *  add such nodes, so the index is built once. */
+    @SuppressWarnings("unchecked")
+    private Map<Object, Set<FormalOut>> getFormalOutIndex() {
+        Map<Object, Set<FormalOut>> index = formalOutIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (formalOutIndex == null) {
+                    Map<Object, Set<FormalOut>> result = new IdentityHashMap<>();
+                    for (var node : sdg.vertexSet()) {
+                        if (node instanceof FormalIONode && ((FormalIONode) node).isOutput() // formal-out nodes
+                                || node instanceof OutputNode // output nodes (the value returned)
+                                || node instanceof ExitNode) // normal/exception exit nodes (for exception handling)
+                            result.computeIfAbsent(node.getAstNode(), k -> new HashSet<>()).add((FormalOut) node);
+                    }
+                    formalOutIndex = result;
+                }
+                index = formalOutIndex;
+            }
+        }
+        return index;
     }
 
     /** Given an output or formal-out node, locate the formal-in nodes it depends on.
@@ -76,8 +99,7 @@ public abstract class AbstractSummaryArcAnalyzer<ActualIn extends SyntheticNode<
 
     /** Generate all summary arcs for a given call. Arc generation should be idempotent:
      *  if this method is called repeatedly it should not create duplicate summary arcs. */
-    protected void saveDeclaration(CallGraph.Vertex vertex) {
-        var result = vertexDataMap.get(vertex);
+    protected void saveDeclaration(CallGraph.Vertex vertex, Map<FormalOut, Set<FormalIn>> result) {
         for (CallGraph.Edge<?> edge : graph.incomingEdgesOf(vertex)) {
             for (var entry : result.entrySet()) {
                 Collection<? extends SyntheticNode<?>> actualOuts = findOutputNode(edge, entry.getKey());
@@ -9,6 +9,7 @@ import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.stmt.TryStmt;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.var;
 import slicing.arcs.pdg.ControlDependencyArc;
 import slicing.arcs.pdg.DataDependencyArc;
@@ -31,6 +32,7 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * The <b>System Dependence Graph</b> represents the statements of a program in
@@ -52,6 +54,9 @@ public class SDG extends Graph implements Sliceable, Buildable<NodeList<Compilat
 
     protected boolean built = false;
     protected NodeList<CompilationUnit> compilationUnits;
+    /** Executor on which the summary arcs may be computed in parallel, null to compute them while building. */
+    @Setter
+    protected Executor summaryExecutor;
 
     /** Obtain the list of compilation units used to create this graph. */
     public NodeList<CompilationUnit> getCompilationUnits() {
@@ -228,7 +233,7 @@ public class SDG extends Graph implements Sliceable, Buildable<NodeList<Compilat
 
         /** Connect actual-in to actual-out nodes, summarizing the interprocedural arcs. */
         protected void createSummaryArcs() {
-            new SummaryArcAnalyzer(SDG.this, callGraph).analyze();
+            new SummaryArcAnalyzer(SDG.this, callGraph).analyze(summaryExecutor);
         }
 
         /** Create a new CFG, of the appropriate type for the kind of SDG we're building. */
@@ -1,6 +1,7 @@
 package slicing.graphs.sdg;
 
 import com.github.javaparser.ast.body.CallableDeclaration;
+import lombok.var;
 import slicing.graphs.CallGraph;
 import slicing.nodes.SyntheticNode;
 import slicing.nodes.exceptionsensitive.ExitNode;
@@ -10,20 +11,28 @@ import slicing.nodes.io.CallNode;
 import slicing.nodes.io.FormalIONode;
 import slicing.nodes.io.OutputNode;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Generates the summary arcs between actual-in and actual-out, return and exception/exit return nodes.
  */
 public class SummaryArcAnalyzer extends AbstractSummaryArcAnalyzer<ActualIONode, SyntheticNode<CallableDeclaration<?>>, FormalIONode> {
+    /** Actual-in/out, return and exception/normal return nodes by call, see {@link #callSiteNodes(CallGraph.Edge)}. */
+    private volatile Map<Object, List<SyntheticNode<?>>> callSiteIndex;
+
     public SummaryArcAnalyzer(SDG sdg, CallGraph graph) {
         super(sdg, graph);
     }
 
+    /** Each computation traverses the SDG with a slicing algorithm of its own and the lookups go
+     *  through indexes built once under a lock, so independent components may be analyzed in parallel. */
+    @Override
+    protected boolean isParallel() {
+        return true;
+    }
+
     @Override
     protected Set<FormalIONode> computeFormalIn(SyntheticNode<CallableDeclaration<?>> formalOut) {
         return sdg.createSlicingAlgorithm().traverseProcedure(formalOut).getGraphNodes().stream()
@@ -35,10 +44,9 @@ public class SummaryArcAnalyzer extends AbstractSummaryArcAnalyzer<ActualIONode,
 
     @Override
     protected Collection<ActualIONode> findActualIn(CallGraph.Edge<?> edge, FormalIONode formalIn) {
-        return sdg.vertexSet().stream()
+        return callSiteNodes(edge)
                 .filter(ActualIONode.class::isInstance)
                 .map(ActualIONode.class::cast)
-                .filter(n -> n.getAstNode() == edge.getCall())
                 .filter(n -> n.matchesFormalIO(formalIn))
                 .collect(Collectors.toSet());
     }
@@ -57,10 +65,9 @@ public class SummaryArcAnalyzer extends AbstractSummaryArcAnalyzer<ActualIONode,
     /** Find the actual-out node that corresponds to the given formal-out in the given call.
      *  To locate any actual-out, you should use {@link #findOutputNode(CallGraph.Edge, SyntheticNode)}. */
     protected Collection<ActualIONode> findActualOut(CallGraph.Edge<?> edge, FormalIONode formalOut) {
-        return sdg.vertexSet().stream()
+        return callSiteNodes(edge)
                 .filter(ActualIONode.class::isInstance)
                 .map(ActualIONode.class::cast)
-                .filter(n -> n.getAstNode() == edge.getCall())
                 .filter(n -> n.matchesFormalIO(formalOut))
                 .collect(Collectors.toSet());
     }
@@ -68,21 +75,39 @@ public class SummaryArcAnalyzer extends AbstractSummaryArcAnalyzer<ActualIONode,
     /** Find the return node of the given call. There is only one per method.
      *  To locate any actual-out, you should use {@link #findOutputNode(CallGraph.Edge, SyntheticNode)}. */
     protected CallNode.Return findReturnNode(CallGraph.Edge<?> edge) {
-        return sdg.vertexSet().stream()
+        return callSiteNodes(edge)
                 .filter(CallNode.Return.class::isInstance)
                 .map(CallNode.Return.class::cast)
-                .filter(n -> n.getAstNode() == edge.getCall())
                 .findAny().orElseThrow(() -> new NoSuchElementException("No matching CallNode.Return found"));
     }
 
     /** Find the exception/normal return node that corresponds to the given exception/normal exit in the given call.
      *  To locate any actual-out, you should use {@link #findOutputNode(CallGraph.Edge, SyntheticNode)}. */
     protected Collection<ReturnNode> getReturnNode(CallGraph.Edge<?> edge, ExitNode exitNode) {
-        return sdg.vertexSet().stream()
+        return callSiteNodes(edge)
                 .filter(ReturnNode.class::isInstance)
                 .map(ReturnNode.class::cast)
-                .filter(n -> n.getAstNode() == edge.getCall())
                 .filter(exitNode::matchesReturnNode)
                 .collect(Collectors.toSet());
     }
+
+    /** The nodes of the given call that may be the target or source of a summary arc. The SDG is indexed
+     *  by call in one pass the first time, since computing summary arcs does not add nodes. */
+    protected Stream<SyntheticNode<?>> callSiteNodes(CallGraph.Edge<?> edge) {
+        Map<Object, List<SyntheticNode<?>>> index = callSiteIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (callSiteIndex == null) {
+                    Map<Object, List<SyntheticNode<?>>> result = new IdentityHashMap<>();
+                    for (var node : sdg.vertexSet())
+                        if (node instanceof ActualIONode || node instanceof CallNode.Return || node instanceof ReturnNode)
+                            result.computeIfAbsent(((SyntheticNode<?>) node).getAstNode(), k -> new ArrayList<>())
+                                    .add((SyntheticNode<?>) node);
+                    callSiteIndex = result;
+                }
+                index = callSiteIndex;
+            }
+        }
+        return index.getOrDefault(edge.getCall(), Collections.emptyList()).stream();
+    }
 }
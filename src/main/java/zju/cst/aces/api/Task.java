@@ -3,20 +3,28 @@ package zju.cst.aces.api;
 import zju.cst.aces.api.phase.Phase;
 import zju.cst.aces.api.phase.PhaseImpl;
 import zju.cst.aces.api.config.Config;
+import zju.cst.aces.api.impl.RunnerImpl;
+import zju.cst.aces.coverage.CoverageSession;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.runner.AbstractRunner;
+import zju.cst.aces.runner.ClassRunner;
+import zju.cst.aces.runner.MethodPlanner;
+import zju.cst.aces.runner.RunJournal;
+import zju.cst.aces.runner.WorkScheduler;
 import zju.cst.aces.util.ClassNameProcessor;
+import zju.cst.aces.util.LlmRateLimiter;
+import zju.cst.aces.util.ReportWriter;
+import zju.cst.aces.util.TestClassMerger;
+import zju.cst.aces.util.TestLauncher;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -105,6 +113,8 @@ public class Task {
         }
 
         log.info(String.format("\n==========================\n[%s] Generation finished", config.pluginSign));
+        logExecutionStatistics();
+        exportReport();
 
         Path testOutPutPath = config.getTestOutput();
         classNameProcessor.processJavaFiles(testOutPutPath);
@@ -134,6 +144,8 @@ public class Task {
             log.warn("Class not found: " + className + " in " + config.getProject().getArtifactId());
         }
         log.info(String.format("\n==========================\n[%s] Generation finished",config.pluginSign));
+        logExecutionStatistics();
+        exportReport();
 
         Path testOutPutPath = config.getTestOutput();
         classNameProcessor.processJavaFiles(testOutPutPath);
@@ -158,14 +170,38 @@ public class Task {
         Phase phase = PhaseImpl.createPhase(config);
         phase.prepare();
         List<String> classPaths = ProjectParser.scanSourceDirectory(project);
+        RunJournal journal = RunJournal.open(config.getTmpOutput().resolve("journal.log"), config.isResume());
+        config.setJournal(journal);
+        try {
+            generate(classPaths);
+        } finally {
+            journal.close();
+            config.setJournal(null);
+            CoverageSession.closeAll();
+        }
+
+        log.info(String.format("\n==========================\n[%s] Generation finished",config.pluginSign));
+        logExecutionStatistics();
+        exportReport();
 
+        Path testOutPutPath = config.getTestOutput();
+        classNameProcessor.processJavaFiles(testOutPutPath);
+        log.info(String.format("\n==========================\n[%s] Test processed",config.pluginSign));
+    }
+
+    /**
+     * Generate tests for all classes of the project, as planned or class by class.
+     */
+    private void generate(List<String> classPaths) {
         try {
-            config.setJobCount(new AtomicInteger(Counter.countMethod(config.getTmpOutput())));
+            config.setJobCount(new AtomicInteger(Counter.countMethod(config)));
         } catch (IOException e) {
             log.error("Error when counting methods: " + e);
         }
 
-        if (config.isEnableMultithreading() == true) {
+        if (config.isPrioritize() || config.getTokenBudget() > 0 || config.getTimeBudget() > 0) {
+            plannedProjectJob(classPaths);
+        } else if (config.isEnableMultithreading() == true) {
             projectJob(classPaths);
         } else {
             for (String classPath : classPaths) {
@@ -185,64 +221,153 @@ public class Task {
                 }
             }
         }
+    }
 
-        log.info(String.format("\n==========================\n[%s] Generation finished",config.pluginSign));
+    /**
+     * Submit every class to the shared scheduler and wait for all of them.
+     * With the default runner, the methods and attempts of a class are scheduled as units of their own.
+     */
+    public void projectJob(List<String> classPaths) {
+        WorkScheduler scheduler = config.getScheduler();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String classPath : classPaths) {
+            String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
+            CompletableFuture<Void> future = scheduler.supply(() -> {
+                String fullClassName = getFullClassName(config, className);
+                log.info(String.format("\n==========================\n[%s] Generating tests for class < ",config.pluginSign) + className + " > ...");
+                ClassInfo info = AbstractRunner.getClassInfo(config, fullClassName);
+                if (!Counter.filter(info)) {
+                    log.debug("Skip class: " + classPath);
+                    return null;
+                }
+                return fullClassName;
+            }).thenCompose(fullClassName -> {
+                if (fullClassName == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                if (runner instanceof RunnerImpl) {
+                    return ((RunnerImpl) runner).runClassAsync(fullClassName);
+                }
+                return scheduler.submit(() -> runner.runClass(fullClassName));
+            }).exceptionally(e -> {
+                log.error(String.format("[%s] Generate tests for class ",config.pluginSign) + className + " failed: " + e.getCause());
+                return null;
+            });
+            futures.add(future);
+        }
+        scheduler.await(futures);
+    }
 
-        Path testOutPutPath = config.getTestOutput();
-        classNameProcessor.processJavaFiles(testOutPutPath);
-        log.info(String.format("\n==========================\n[%s] Test processed",config.pluginSign));
+    /**
+     * Write the report collected during the run in its array format.
+     */
+    private void exportReport() {
+        if (config.isGenerateJsonReport()) {
+            ReportWriter.forDirectory(config.getTestOutput()).export();
+        }
+        ReportWriter.close(config.getTestOutput());
     }
 
-    public void projectJob(List<String> classPaths) {
-        ExecutorService executor = Executors.newFixedThreadPool(config.getClassThreads());
-        List<Future<String>> futures = new ArrayList<>();
+    /**
+     * Generate for the methods of all classes in the order of the planner, as long as the budget allows.
+     * Classes are merged once all their planned methods are done.
+     */
+    public void plannedProjectJob(List<String> classPaths) {
+        List<String> fullClassNames = new ArrayList<>();
         for (String classPath : classPaths) {
-            Callable<String> callable = new Callable<String>() {
-                @Override
-                public String call() throws Exception {
-                    String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
+            String className = classPath.substring(classPath.lastIndexOf(File.separator) + 1, classPath.lastIndexOf("."));
+            try {
+                fullClassNames.add(getFullClassName(config, className));
+            } catch (IOException | RuntimeException e) {
+                log.error(String.format("[%s] Generate tests for class ",config.pluginSign) + className + " failed: " + e);
+            }
+        }
+        MethodPlanner planner = new MethodPlanner(config);
+        List<MethodPlanner.Item> plan = planner.plan(fullClassNames);
+        log.info(String.format("\n==========================\n[%s] Planned %d methods", config.pluginSign, plan.size()));
+
+        if (!config.isEnableMultithreading() || !(runner instanceof RunnerImpl)) {
+            Set<String> started = new LinkedHashSet<>();
+            for (MethodPlanner.Item item : plan) {
+                if (!planner.admit(item)) {
+                    continue;
+                }
+                try {
+                    started.add(item.getFullClassName());
+                    runner.runMethod(item.getFullClassName(), item.getMethodInfo());
+                } catch (RuntimeException e) {
+                    log.error("Error when generating tests for " + item.getMethodInfo().getMethodSignature() + " in " + item.getFullClassName() + ": " + e);
+                } finally {
+                    planner.release(item);
+                }
+            }
+            if (config.isEnableMerge()) {
+                for (String fullClassName : started) {
                     try {
-                        String fullClassName = getFullClassName(config, className);
-                        log.info(String.format("\n==========================\n[%s] Generating tests for class < ",config.pluginSign) + className + " > ...");
-                        ClassInfo info = AbstractRunner.getClassInfo(config, fullClassName);
-                        if (!Counter.filter(info)) {
-                            return "Skip class: " + classPath;
-                        }
-                        runner.runClass(fullClassName);
+                        new TestClassMerger(config, fullClassName).mergeWithSuite();
                     } catch (IOException e) {
-                        log.error(String.format("[%s] Generate tests for class ",config.pluginSign) + className + " failed: " + e);
+                        log.error("Failed to merge tests of " + fullClassName + ": " + e);
                     }
-                    return "Processed " + classPath;
                 }
-            };
-            Future<String> future = executor.submit(callable);
-            futures.add(future);
+            }
+            return;
         }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                executor.shutdownNow();
+        // Units are submitted in plan order, so workers and LLM permits go to the best methods first
+        WorkScheduler scheduler = config.getScheduler();
+        Map<String, ClassRunner> classRunners = new HashMap<>();
+        Map<String, List<CompletableFuture<Void>>> classFutures = new LinkedHashMap<>();
+        for (MethodPlanner.Item item : plan) {
+            String fullClassName = item.getFullClassName();
+            ClassRunner classRunner = classRunners.get(fullClassName);
+            if (classRunner == null) {
+                try {
+                    classRunner = new ClassRunner(config, fullClassName);
+                } catch (IOException e) {
+                    log.error(String.format("[%s] Generate tests for class ",config.pluginSign) + fullClassName + " failed: " + e);
+                    continue;
+                }
+                classRunners.put(fullClassName, classRunner);
             }
-        });
+            ClassRunner current = classRunner;
+            CompletableFuture<Void> future = scheduler.supply(() -> planner.admit(item)).thenCompose(admitted -> admitted
+                    ? current.submitMethod(item.getMethodInfo().getMethodSignature())
+                            .whenComplete((result, e) -> planner.release(item))
+                    : CompletableFuture.completedFuture(null));
+            classFutures.computeIfAbsent(fullClassName, k -> new ArrayList<>()).add(future);
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        classFutures.forEach((fullClassName, methodFutures) -> futures.add(classRunners.get(fullClassName)
+                .mergeWhenDone(methodFutures)
+                .exceptionally(e -> {
+                    log.error(String.format("[%s] Generate tests for class ",config.pluginSign) + fullClassName + " failed: " + e.getCause());
+                    return null;
+                })));
+        scheduler.await(futures);
+    }
 
-        for (Future<String> future : futures) {
+    private void logExecutionStatistics() {
+        if (TestLauncher.getRuns() > 0) {
+            log.info(TestLauncher.getStatistics());
+        }
+        LlmRateLimiter limiter = config.getRateLimiter();
+        if (limiter != null && limiter.getRequests() > 0) {
+            log.info(limiter.getStatistics());
             try {
-                String result = future.get();
-                System.out.println(result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+                Path metrics = config.getTmpOutput().resolve("llm-metrics.prom");
+                Files.createDirectories(metrics.getParent());
+                Files.write(metrics, limiter.exportMetrics().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                log.warn("Failed to write LLM metrics: " + e);
             }
         }
-
-        executor.shutdown();
     }
 
     public static String getFullClassName(Config config, String name) throws IOException {
         if (isFullName(name)) {
             return name;
         }
-        Path classMapPath = config.getClassNameMapPath();
-        Map<String, List<String>> classMap = config.getGSON().fromJson(new String(Files.readAllBytes(classMapPath), StandardCharsets.UTF_8), Map.class);
+        Map<String, List<String>> classMap = config.getInfoRepository().getClassNameMap();
         if (classMap.containsKey(name)) {
             if (classMap.get(name).size() > 1) {
                 throw new RuntimeException((String.format("[%s] Multiple classes Named ",config.pluginSign)) + name + ": " + classMap.get(name)
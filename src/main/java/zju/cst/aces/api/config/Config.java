@@ -2,7 +2,6 @@ package zju.cst.aces.api.config;
 
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 import zju.cst.aces.api.PreProcess;
@@ -19,8 +18,17 @@ import zju.cst.aces.api.impl.LoggerImpl;
 import zju.cst.aces.api.Logger;
 import zju.cst.aces.api.impl.ValidatorImpl;
 import zju.cst.aces.dto.OCM;
+import zju.cst.aces.parser.CachingTypeSolver;
+import zju.cst.aces.parser.ClassInfoRepository;
+import zju.cst.aces.parser.LazyJarTypeSolver;
+import zju.cst.aces.parser.ParserFactory;
+import zju.cst.aces.runner.RunJournal;
+import zju.cst.aces.runner.WorkScheduler;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.prompt.template.PromptTemplate;
+import zju.cst.aces.util.AskGPT;
+import zju.cst.aces.util.LlmRateLimiter;
+import zju.cst.aces.util.ResponseCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -32,7 +40,7 @@ import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Getter
@@ -59,6 +67,23 @@ public class Config {
     public boolean enableObfuscate;
     public String[] obfuscateGroupIds;
     public int maxThreads;
+    public int parseThreads;
+    public int forkCount;
+    public int llmPermits;
+    public int compilePermits;
+    public WorkScheduler scheduler;
+    public int requestsPerMinute;
+    public int tokensPerMinute;
+    public LlmRateLimiter rateLimiter;
+    public boolean enableResponseCache;
+    public long responseCacheSize;
+    public ResponseCache responseCache;
+    public boolean resume;
+    public RunJournal journal;
+    public boolean prioritize;
+    public int speculativeAttempts;
+    public long tokenBudget;
+    public int timeBudget;
     public int classThreads;
     public int methodThreads;
     public int testNumber;
@@ -92,7 +117,7 @@ public class Config {
     public AtomicInteger sharedInteger = new AtomicInteger(0);
     public AtomicInteger jobCount = new AtomicInteger(0);
     public AtomicInteger completedJobCount = new AtomicInteger(0);
-    public static Map<String, Map<String, String>> classMapping = new HashMap<>();
+    public static Map<String, Map<String, String>> classMapping = new ConcurrentHashMap<>();
     public static Map<String, TreeSet<String>> objectConstructionCode = new HashMap<>();
     public static OCM ocm = new OCM();
     public Validator validator;
@@ -102,6 +127,10 @@ public class Config {
     public boolean useExtra;
     public List<String> dependencyPaths;
     public boolean generateJsonReport;
+    public int infoCacheSize;
+    public ClassInfoRepository infoRepository;
+    public int typeSolverCacheSize;
+    public CachingTypeSolver typeSolver;
 
     @Getter
     @Setter
@@ -126,6 +155,19 @@ public class Config {
         public boolean enableObfuscate = false;
         public String[] obfuscateGroupIds;
         public int maxThreads = Runtime.getRuntime().availableProcessors() * 5;
+        public int parseThreads = Runtime.getRuntime().availableProcessors();
+        public int forkCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        public int llmPermits = 0;
+        public int compilePermits = 0;
+        public int requestsPerMinute = 0;
+        public int tokensPerMinute = 0;
+        public boolean enableResponseCache = false;
+        public long responseCacheSize = 512L * 1024 * 1024;
+        public boolean resume = false;
+        public boolean prioritize = false;
+        public int speculativeAttempts = 1;
+        public long tokenBudget = 0;
+        public int timeBudget = 0;
         public int classThreads = (int) Math.ceil((double)  this.maxThreads / 10);
         public int methodThreads = (int) Math.ceil((double) this.maxThreads / this.classThreads);
         public int testNumber = 5;
@@ -153,11 +195,7 @@ public class Config {
         public String proxy = "null:-1";
         public String hostname = "null";
         public String port = "-1";
-        public OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(5, TimeUnit.MINUTES)
-                .writeTimeout(5, TimeUnit.MINUTES)
-                .readTimeout(5, TimeUnit.MINUTES)
-                .build();
+        public OkHttpClient client = AskGPT.newClientBuilder().build();
         public int max_coverage_improve_time=maxRounds;
         public Validator validator;
         public String pluginSign;
@@ -166,6 +204,9 @@ public class Config {
         public boolean useExtra;
         public List<String> dependencyPaths;
         public boolean generateJsonReport = false;
+        public int infoCacheSize = ClassInfoRepository.DEFAULT_CAPACITY;
+        public int typeSolverCacheSize = CachingTypeSolver.DEFAULT_CAPACITY;
+        public CachingTypeSolver typeSolver;
 
         public ConfigBuilder(Project project) {
             initDefault(project);
@@ -376,6 +417,114 @@ public class Config {
             return this;
         }
 
+        public ConfigBuilder parseThreads(int parseThreads) {
+            if (parseThreads > 0) {
+                this.parseThreads = parseThreads;
+            }
+            return this;
+        }
+
+        /**
+         * Number of forked JVMs that execute generated tests, 0 executes them in the plugin JVM.
+         */
+        public ConfigBuilder forkCount(int forkCount) {
+            if (forkCount >= 0) {
+                this.forkCount = forkCount;
+            }
+            return this;
+        }
+
+        /**
+         * Maximum number of concurrent LLM requests, maxThreads by default.
+         */
+        public ConfigBuilder llmPermits(int llmPermits) {
+            this.llmPermits = llmPermits;
+            return this;
+        }
+
+        /**
+         * Maximum number of concurrent compilations and test executions, the number of cores by default.
+         */
+        public ConfigBuilder compilePermits(int compilePermits) {
+            this.compilePermits = compilePermits;
+            return this;
+        }
+
+        /**
+         * Requests per minute allowed for each API key and model, 0 for no limit.
+         */
+        public ConfigBuilder requestsPerMinute(int requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+            return this;
+        }
+
+        /**
+         * Tokens per minute allowed for each API key and model, 0 for no limit.
+         */
+        public ConfigBuilder tokensPerMinute(int tokensPerMinute) {
+            this.tokensPerMinute = tokensPerMinute;
+            return this;
+        }
+
+        /**
+         * Reuse the LLM responses to identical requests of earlier runs, stored under tmpOutput/llm-cache.
+         */
+        public ConfigBuilder enableResponseCache(boolean enableResponseCache) {
+            this.enableResponseCache = enableResponseCache;
+            return this;
+        }
+
+        /**
+         * Size cap of the response cache in bytes, least recently used responses are evicted beyond it.
+         */
+        public ConfigBuilder responseCacheSize(long responseCacheSize) {
+            if (responseCacheSize > 0) {
+                this.responseCacheSize = responseCacheSize;
+            }
+            return this;
+        }
+
+        /**
+         * Continue the last project run from its journal instead of starting over.
+         */
+        public ConfigBuilder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Generate for the methods with the highest estimated value per token first.
+         */
+        public ConfigBuilder prioritize(boolean prioritize) {
+            this.prioritize = prioritize;
+            return this;
+        }
+
+        /**
+         * LLM tokens a project run may use, 0 for no limit. Methods that would exceed it are skipped.
+         */
+        public ConfigBuilder tokenBudget(long tokenBudget) {
+            this.tokenBudget = Math.max(0, tokenBudget);
+            return this;
+        }
+
+        /**
+         * Minutes after which a project run starts no more methods, 0 for no limit.
+         */
+        public ConfigBuilder timeBudget(int timeBudget) {
+            this.timeBudget = Math.max(0, timeBudget);
+            return this;
+        }
+
+        /**
+         * With stopWhenSuccess, the number of attempts of a method that run at once. The first to succeed
+         * cancels the others; 1 runs the attempts one after another.
+         */
+        public ConfigBuilder speculativeAttempts(int speculativeAttempts) {
+            this.speculativeAttempts = Math.max(1, speculativeAttempts);
+            return this;
+        }
+
         public ConfigBuilder classThreads(int classThreads) {
             this.classThreads = classThreads;
             return this;
@@ -542,6 +691,24 @@ public class Config {
             return this;
         }
 
+        public ConfigBuilder infoCacheSize(int infoCacheSize) {
+            if (infoCacheSize > 0) {
+                this.infoCacheSize = infoCacheSize;
+            }
+            return this;
+        }
+
+        /**
+         * Maximum number of type lookups memoized by the symbol solver.
+         */
+        public ConfigBuilder typeSolverCacheSize(int typeSolverCacheSize) {
+            if (typeSolverCacheSize > 0) {
+                this.typeSolverCacheSize = typeSolverCacheSize;
+                this.typeSolver.setCapacity(typeSolverCacheSize);
+            }
+            return this;
+        }
+
         public void setProxy(String proxy) {
             this.proxy = proxy;
             setProxyStr();
@@ -558,19 +725,12 @@ public class Config {
         }
 
         public void setClinet() {
-            this.client = new OkHttpClient.Builder()
-                    .connectTimeout(5, TimeUnit.MINUTES)
-                    .writeTimeout(5, TimeUnit.MINUTES)
-                    .readTimeout(5, TimeUnit.MINUTES)
-                    .build();
+            this.client = AskGPT.newClientBuilder().build();
         }
 
         public void setClinetwithProxy() {
             Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(this.hostname, Integer.parseInt(this.port)));
-            this.client = new OkHttpClient.Builder()
-                    .connectTimeout(5, TimeUnit.MINUTES)
-                    .writeTimeout(5, TimeUnit.MINUTES)
-                    .readTimeout(5, TimeUnit.MINUTES)
+            this.client = AskGPT.newClientBuilder()
                     .proxy(proxy)
                     .build();
         }
@@ -579,28 +739,28 @@ public class Config {
             this.validator = validator;
         }
 
+        /**
+         * Build the symbol solver shared by all parsers. Dependency jars are only indexed on the first lookup
+         * and read on demand, and the lookups of all threads are memoized by a bounded cache at the root.
+         */
         public JavaSymbolSolver getSymbolSolver() {
             CombinedTypeSolver combinedTypeSolver = new CombinedTypeSolver();
             combinedTypeSolver.add(new ReflectionTypeSolver());
+            List<String> jars = new ArrayList<>();
             for (String dep : this.getClassPaths()) {
-                try {
-                    File depFile = new File(dep);
-                    if (!depFile.exists() || !dep.endsWith("jar")) {
-                        continue;
-                    }
-                    combinedTypeSolver.add(new JarTypeSolver(depFile));
-                } catch (Exception e) {
-                    this.getLogger().warn(e.getMessage());
-                    this.getLogger().debug(e.getMessage());
+                if (dep.endsWith("jar") && new File(dep).exists()) {
+                    jars.add(dep);
                 }
             }
+            combinedTypeSolver.add(new LazyJarTypeSolver(jars, this.parseThreads));
             for (String src : this.getProject().getCompileSourceRoots()) { // TODO: remove MavenProject
                 if (new File(src).exists()) {
                     combinedTypeSolver.add(new JavaParserTypeSolver(src));
                 }
             }
-            JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
-            this.setParserFacade(JavaParserFacade.get(combinedTypeSolver));
+            this.typeSolver = new CachingTypeSolver(combinedTypeSolver, this.typeSolverCacheSize);
+            JavaSymbolSolver symbolSolver = new JavaSymbolSolver(this.typeSolver);
+            this.setParserFacade(JavaParserFacade.get(this.typeSolver));
             return symbolSolver;
         }
 
@@ -626,6 +786,14 @@ public class Config {
             config.setEnableObfuscate(this.enableObfuscate);
             config.setObfuscateGroupIds(this.obfuscateGroupIds);
             config.setMaxThreads(this.maxThreads);
+            config.setParseThreads(this.parseThreads);
+            config.setForkCount(this.forkCount);
+            config.setLlmPermits(this.llmPermits > 0 ? this.llmPermits : this.maxThreads);
+            config.setCompilePermits(this.compilePermits > 0 ? this.compilePermits : Runtime.getRuntime().availableProcessors());
+            config.setScheduler(new WorkScheduler(this.maxThreads, config.getLlmPermits(), config.getCompilePermits()));
+            config.setRequestsPerMinute(this.requestsPerMinute);
+            config.setTokensPerMinute(this.tokensPerMinute);
+            config.setRateLimiter(new LlmRateLimiter(this.apiKeys, this.requestsPerMinute, this.tokensPerMinute));
             config.setClassThreads(this.classThreads);
             config.setMethodThreads(this.methodThreads);
             config.setTestNumber(this.testNumber);
@@ -643,6 +811,16 @@ public class Config {
             config.setTestOutput(this.testOutput);
             config.setCounterExamplePath(this.counterExamplePath);
             config.setTmpOutput(this.tmpOutput);
+            config.setEnableResponseCache(this.enableResponseCache);
+            config.setResponseCacheSize(this.responseCacheSize);
+            config.setResume(this.resume);
+            config.setPrioritize(this.prioritize);
+            config.setSpeculativeAttempts(this.speculativeAttempts);
+            config.setTokenBudget(this.tokenBudget);
+            config.setTimeBudget(this.timeBudget);
+            if (this.enableResponseCache) {
+                config.setResponseCache(ResponseCache.open(this.tmpOutput.resolve("llm-cache"), this.responseCacheSize));
+            }
             config.setCompileOutputPath(this.compileOutputPath);
             config.setParseOutput(this.parseOutput);
             config.setErrorOutput(this.errorOutput);
@@ -655,6 +833,10 @@ public class Config {
             config.setPort(this.port);
             config.setClient(this.client);
             config.setLogger(this.logger);
+            if (this.validator instanceof ValidatorImpl) {
+                ((ValidatorImpl) this.validator).setForkCount(this.forkCount);
+                ((ValidatorImpl) this.validator).setLogger(this.logger);
+            }
             config.setValidator(this.validator);
             config.setPluginSign(this.pluginSign);
             config.setPhaseType(this.phaseType);
@@ -663,10 +845,26 @@ public class Config {
             config.setMax_coverage_improve_time(this.max_coverage_improve_time);
             config.setDependencyPaths(this.dependencyPaths);
             config.setGenerateJsonReport(this.generateJsonReport);
+            config.setInfoCacheSize(this.infoCacheSize);
+            config.setTypeSolverCacheSize(this.typeSolverCacheSize);
+            config.setTypeSolver(this.typeSolver);
+            config.setInfoRepository(new ClassInfoRepository(this.parseOutput, this.classNameMapPath,
+                    config.getGSON(), this.infoCacheSize));
             return config;
         }
     }
 
+    /**
+     * The parser of the calling thread, with the configuration of {@link #parser}.
+     * JavaParser instances are not thread-safe, so the shared one is only used as a template.
+     */
+    public JavaParser getParser() {
+        return parser == null ? null : ParserFactory.forThread(parser.getParserConfiguration());
+    }
+
+    /**
+     * Requests to the LLM choose their key through {@link #getRateLimiter()} instead.
+     */
     public String getRandomKey() {
         Random rand = new Random();
         if (apiKeys.length == 0) {
@@ -704,6 +902,14 @@ public class Config {
         logger.info(" MinErrorTokens >>> " + this.getMinErrorTokens());
         logger.info(" MaxPromptTokens >>> " + this.getMaxPromptTokens());
         logger.info(" SleepTime >>> " + this.getSleepTime());
+        logger.info(" RequestsPerMinute >>> " + this.getRequestsPerMinute());
+        logger.info(" TokensPerMinute >>> " + this.getTokensPerMinute());
+        logger.info(" ResponseCache >>> " + this.isEnableResponseCache());
+        logger.info(" Resume >>> " + this.isResume());
+        logger.info(" Prioritize >>> " + this.isPrioritize());
+        logger.info(" SpeculativeAttempts >>> " + this.getSpeculativeAttempts());
+        logger.info(" TokenBudget >>> " + this.getTokenBudget());
+        logger.info(" TimeBudget >>> " + this.getTimeBudget());
         logger.info(" DependencyDepth >>> " + this.getDependencyDepth());
         logger.info(" PhaseType >>> " + this.phaseType);
         logger.info("\n===================================================================\n");
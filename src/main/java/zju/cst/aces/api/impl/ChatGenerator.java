@@ -4,11 +4,19 @@ import zju.cst.aces.api.Generator;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ChatMessage;
 import zju.cst.aces.dto.ChatResponse;
+import zju.cst.aces.dto.RoundRecord;
 import zju.cst.aces.runner.AbstractRunner;
+import zju.cst.aces.runner.CancellationToken;
+import zju.cst.aces.runner.WorkScheduler;
 import zju.cst.aces.util.AskGPT;
 import zju.cst.aces.util.CodeExtractor;
+import zju.cst.aces.util.ResponseCache;
+import zju.cst.aces.util.TokenCounter;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class ChatGenerator implements Generator {
 
@@ -23,14 +31,83 @@ public class ChatGenerator implements Generator {
         return extractCodeByResponse(chat(config, chatMessages));
     }
 
+    /**
+     * Get the response from the response cache if enabled and present, from the LLM otherwise.
+     * The worker blocks until the response arrives, the pool does not add a thread for it. Within a cancellable attempt,
+     * cancelling it aborts the request and throws a CancellationException here.
+     */
     public static ChatResponse chat(Config config, List<ChatMessage> chatMessages) {
-        ChatResponse response = new AskGPT(config).askChatGPT(chatMessages);
+        CancellationToken.checkCurrent();
+        CompletableFuture<ChatResponse> future = chatAsync(config, chatMessages);
+        CancellationToken token = CancellationToken.current();
+        Runnable registration = token == null ? () -> {} : token.onCancel(() -> future.cancel(true));
+        ChatResponse response;
+        try {
+            response = WorkScheduler.get(future);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In ChatGenerator.chat: " + e);
+        } catch (ExecutionException e) {
+            config.getLogger().debug("AskGPT: Failed to get response\n");
+            response = null;
+        } finally {
+            registration.run();
+        }
         if (response == null) {
             throw new RuntimeException("Response is null, failed to get response.");
         }
         return response;
     }
 
+    /**
+     * {@link #chat} for a round of an attempt. A round cancelled while waiting is recorded as cancelled,
+     * with the tokens of its prompt added, since the prompt may already have been sent. The record may be null.
+     */
+    public static ChatResponse chat(Config config, List<ChatMessage> chatMessages, RoundRecord record) {
+        try {
+            return chat(config, chatMessages);
+        } catch (CancellationException e) {
+            if (record != null) {
+                int promptTokens = 0;
+                for (ChatMessage message : chatMessages) {
+                    promptTokens += TokenCounter.countToken(message.getContent(), config.getModel().getModelName());
+                }
+                // A repair may be cancelled after the round already counted its generation
+                record.setPromptToken(Math.max(record.getPromptToken(), 0) + promptTokens);
+                record.setPrompt(chatMessages);
+                record.setCancelled(true);
+                record.setHasCode(false);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Send the request without blocking once an LLM permit is free, the future fails if no response could be obtained.
+     */
+    public static CompletableFuture<ChatResponse> chatAsync(Config config, List<ChatMessage> chatMessages) {
+        ResponseCache cache = config.getResponseCache();
+        if (cache == null) {
+            return config.getScheduler().withLlmPermit(() -> new AskGPT(config).askChatGPTAsync(chatMessages));
+        }
+        String key = cache.nextKey(config, chatMessages);
+        ChatResponse cached = cache.get(key);
+        if (cached != null) {
+            config.getLogger().debug("Response from cache: " + key);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return config.getScheduler().withLlmPermit(() -> {
+            CompletableFuture<ChatResponse> future = new AskGPT(config).askChatGPTAsync(chatMessages);
+            future.thenAccept(response -> {
+                if (response != null) {
+                    cache.put(key, response);
+                }
+            });
+            return future;
+        });
+    }
+
     public static String extractCodeByResponse(ChatResponse response) {
         return new CodeExtractor(getContentByResponse(response)).getExtractedCode();
     }
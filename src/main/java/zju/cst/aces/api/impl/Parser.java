@@ -3,6 +3,7 @@ package zju.cst.aces.api.impl;
 import lombok.Data;
 import zju.cst.aces.api.*;
 import zju.cst.aces.api.config.Config;
+import zju.cst.aces.parser.ParseManifest;
 import zju.cst.aces.parser.ProjectParser;
 
 import zju.cst.aces.api.PreProcess;
@@ -48,6 +49,10 @@ public class Parser implements PreProcess {
             log.info(String.format("\n==========================\n[%s] Parsing class info ...", config.pluginSign));
             parser.parse();
             log.info(String.format("\n==========================\n[%s] Parse finished", config.pluginSign));
+        } else if (config.getTmpOutput().resolve(ParseManifest.MANIFEST_FILE).toFile().exists()) {
+            log.info(String.format("\n==========================\n[%s] Updating class info of changed files ...", config.pluginSign));
+            parser.update();
+            log.info(String.format("\n==========================\n[%s] Parse finished", config.pluginSign));
         } else {
             log.info(String.format("\n==========================\n[%s] Parse output already exists, skip parsing!", config.pluginSign));
         }
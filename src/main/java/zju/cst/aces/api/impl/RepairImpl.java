@@ -5,6 +5,9 @@ import zju.cst.aces.api.Repair;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ChatResponse;
 import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.dto.RoundRecord;
+
+import java.util.List;
 
 import static zju.cst.aces.runner.AbstractRunner.*;
 import static zju.cst.aces.api.impl.ChatGenerator.*;
@@ -46,7 +49,7 @@ public class RepairImpl implements Repair {
             config.getLogger().error("Exceed max prompt tokens: " + promptInfo.methodInfo.methodName + " Skipped.");
             return code;
         }
-        ChatResponse response = chat(config, promptConstructorImpl.getChatMessages());
+        ChatResponse response = chat(config, promptConstructorImpl.getChatMessages(), getRecord(promptInfo, rounds));
         String newcode = extractCodeByResponse(response);
         if (newcode.isEmpty()) {
             config.getLogger().warn("Test for method < " + promptInfo.methodInfo.methodName + " > extract code failed");
@@ -72,7 +75,7 @@ public class RepairImpl implements Repair {
             config.getLogger().error("Exceed max prompt tokens: " + promptInfo.methodInfo.methodName + " Skipped.");
             return code;
         }
-        ChatResponse response = chat(config, promptConstructorImpl.getChatMessages());
+        ChatResponse response = chat(config, promptConstructorImpl.getChatMessages(), getRecord(promptInfo, promptInfo.getRecords().size() - 1));
         String newcode = extractCodeByResponse(response);
         if (newcode.isEmpty()) {
             config.getLogger().warn("Test for method < " + promptInfo.methodInfo.methodName + " > extract code failed");
@@ -81,4 +84,12 @@ public class RepairImpl implements Repair {
             return newcode;
         }
     }
+
+    /**
+     * The record of the round being repaired, if the runner keeps one.
+     */
+    private static RoundRecord getRecord(PromptInfo promptInfo, int rounds) {
+        List<RoundRecord> records = promptInfo.getRecords();
+        return rounds >= 0 && rounds < records.size() ? records.get(rounds) : null;
+    }
 }
@@ -12,6 +12,7 @@ import zju.cst.aces.runner.solution_runner.ChatTesterRunner;
 import zju.cst.aces.runner.solution_runner.HITSRunner;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 public class RunnerImpl implements Runner {
     Config config;
@@ -28,6 +29,17 @@ public class RunnerImpl implements Runner {
         }
     }
 
+    /**
+     * Submit the methods of the class to the scheduler without waiting for them.
+     */
+    public CompletableFuture<Void> runClassAsync(String fullClassName) {
+        try {
+            return new ClassRunner(config, fullClassName).startAsync();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void runMethod(String fullClassName, MethodInfo methodInfo) {
         try {
             selectRunner(config.getPhaseType(), fullClassName, methodInfo);
@@ -1,16 +1,21 @@
 package zju.cst.aces.api.impl;
 
 import com.github.javaparser.ParseProblemException;
-import com.github.javaparser.StaticJavaParser;
 import lombok.Data;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import zju.cst.aces.api.Logger;
 import zju.cst.aces.api.Validator;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.parser.ParserFactory;
 import zju.cst.aces.util.TestCompiler;
+import zju.cst.aces.util.fork.ForkedTestPool;
+import zju.cst.aces.util.fork.ForkedTestSummary;
 
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -24,6 +29,9 @@ public class ValidatorImpl implements Validator {
 
     TestCompiler compiler;
     private static final int TIMEOUT = 1; // Timeout in minutes
+    // Number of forked JVMs to run tests in, 0 runs them in-process
+    int forkCount;
+    Logger logger;
 
     public ValidatorImpl(Path testOutputPath, Path compileOutputPath, Path targetPath, List<String> classpathElements) {
         this.compiler = new TestCompiler(testOutputPath, compileOutputPath, targetPath, classpathElements);
@@ -32,7 +40,7 @@ public class ValidatorImpl implements Validator {
     @Override
     public boolean syntacticValidate(String code) {
         try {
-            StaticJavaParser.parse(code);
+            ParserFactory.parse(code);
             return true;
         } catch (ParseProblemException e) {
             return false;
@@ -41,13 +49,14 @@ public class ValidatorImpl implements Validator {
 
     @Override
     public boolean semanticValidate(String code, String className, Path outputPath, PromptInfo promptInfo) {
-        compiler.setCode(code);
-        return compiler.compileTest(className, outputPath, promptInfo);
+        return compiler.compileTest(className, code, outputPath, promptInfo);
     }
 
     @Override
     public boolean runtimeValidate(String fullTestName) {
-        return compiler.executeTest(fullTestName).getTestsFailedCount() == 0;
+        // Same isolation and timeout as the first execution, a timeout here does not validate the test
+        TestExecutionSummary summary = execute(fullTestName);
+        return summary != null && summary.getTestsFailedCount() == 0;
     }
 
     @Override
@@ -55,8 +64,19 @@ public class ValidatorImpl implements Validator {
         return compiler.compileTest(className, outputPath, promptInfo);
     }
 
+    /**
+     * Returns null only if the test timed out. If the test could not be run, the summary reports it as failed,
+     * so it is not taken as passing.
+     */
     @Override
     public TestExecutionSummary execute(String fullTestName) {
+        if (forkCount > 0) {
+            return executeForked(fullTestName);
+        }
+        return executeInProcess(fullTestName);
+    }
+
+    private TestExecutionSummary executeInProcess(String fullTestName) {
         ExecutorService executor = Executors.newSingleThreadExecutor();
         Callable<TestExecutionSummary> task = () -> compiler.executeTest(fullTestName);
 
@@ -66,11 +86,40 @@ public class ValidatorImpl implements Validator {
         } catch (TimeoutException e) {
             future.cancel(true);
             return null; // Timeout exceeded, return null
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-            return null; // Exception occurred, return null
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In ValidatorImpl.execute: " + e);
+        } catch (ExecutionException e) {
+            return ForkedTestSummary.failed(fullTestName, e.getCause());
         } finally {
             executor.shutdown();
         }
     }
+
+    /**
+     * A worker that fails to start or crashes is replaced, so the test is retried once on a fresh worker
+     * before it is reported as failed.
+     */
+    private TestExecutionSummary executeForked(String fullTestName) {
+        Map<String, byte[]> classes = compiler.getCompiledClasses().getOrDefault(fullTestName, new HashMap<>());
+        Exception failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                return ForkedTestPool.get(compiler.getClasspathElements(), TestCompiler.buildFolder, forkCount)
+                        .execute(fullTestName, classes, TIMEOUT, TimeUnit.MINUTES);
+            } catch (TimeoutException e) {
+                return null; // Timeout exceeded, the worker has been killed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("In ValidatorImpl.executeForked: " + e);
+            } catch (Exception e) {
+                failure = e;
+                if (logger != null) {
+                    logger.warn("Forked execution of " + fullTestName + " failed on attempt " + (attempt + 1) + ": " + e);
+                }
+            }
+        }
+        return ForkedTestSummary.failed(fullTestName, failure);
+    }
 }
@@ -1,6 +1,5 @@
 package zju.cst.aces.api.impl.obfuscator;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.ImportDeclaration;
 import com.github.javaparser.ast.PackageDeclaration;
@@ -23,6 +22,7 @@ import zju.cst.aces.api.impl.obfuscator.util.ASMParser;
 import zju.cst.aces.dto.PromptInfo;
 import zju.cst.aces.dto.TestMessage;
 import zju.cst.aces.api.impl.obfuscator.util.SymbolAnalyzer;
+import zju.cst.aces.parser.ParserFactory;
 import zju.cst.aces.parser.ProjectParser;
 
 import java.io.IOException;
@@ -96,7 +96,7 @@ public class Obfuscator {
 
     public String obfuscateMethodBrief(String brief) {
         try {
-            BodyDeclaration md = StaticJavaParser.parseBodyDeclaration(brief);
+            BodyDeclaration md = ParserFactory.parseBodyDeclaration(brief);
             md.accept(new ObfuscatorVisitor(), null);
             return md.toString().substring(0, md.toString().lastIndexOf("{"));
         } catch (Exception e) {
@@ -115,7 +115,7 @@ public class Obfuscator {
         }
         String obfuscatedCode = "";
         try {
-            BodyDeclaration md = StaticJavaParser.parseBodyDeclaration(code);
+            BodyDeclaration md = ParserFactory.parseBodyDeclaration(code);
             md.accept(new ObfuscatorVisitor(), null);
             obfuscatedCode = md.toString();
         } catch (Exception e) {
@@ -130,7 +130,7 @@ public class Obfuscator {
         }
         String obfuscatedCode = "";
         try {
-            CompilationUnit cu = StaticJavaParser.parse(code);
+            CompilationUnit cu = ParserFactory.parse(code);
             PackageDeclaration pd = cu.getPackageDeclaration().orElse(null);
             if (pd != null) {
                 String packageName = pd.getNameAsString();
@@ -165,7 +165,7 @@ public class Obfuscator {
         }
         String obfuscatedCode = "";
         try {
-            CompilationUnit cu = StaticJavaParser.parse(code);
+            CompilationUnit cu = ParserFactory.parse(code);
             PackageDeclaration pd = cu.getPackageDeclaration().orElseThrow(()->new NoSuchElementException("No package declaration present in the compilation unit"));
             String packageName = pd.getNameAsString();
             String deobfuscatedPackage = decryptName(packageName);
@@ -36,7 +36,8 @@ public class COVERUP extends PhaseImpl {
             try {
                 String testName = pc.getFullTestName().substring(pc.getFullTestName().lastIndexOf(".") + 1);
                 Path savePath = config.getTestOutput().resolve(pc.getFullTestName().replace(".", File.separator) + ".java");
-                Map<String, Object> coverageInfo = new CodeCoverageAnalyzer().analyzeCoverage(
+                CodeCoverageAnalyzer analyzer = new CodeCoverageAnalyzer();
+                Map<String, Object> coverageInfo = analyzer.analyzeCoverage(
                         code, pc.getFullTestName(),
                         promptInfo.fullClassName,
                         promptInfo.methodSignature,
@@ -44,16 +45,25 @@ public class COVERUP extends PhaseImpl {
                         config.project.getCompileSourceRoots().get(0),
                         config.classPaths
                 );
+                // The lines no attempt for this method has covered yet are the ones worth asking for
+                Map<String, Object> mergedCoverageInfo = analyzer.getMergedCoverage(
+                        promptInfo.fullClassName,
+                        promptInfo.methodSignature,
+                        config.project.getBuildPath().toString(),
+                        config.project.getCompileSourceRoots().get(0),
+                        config.classPaths
+                );
 
                 float lineCoverage = coverageInfo.get("lineCoverage") instanceof Double
                         ? ((Double) coverageInfo.get("lineCoverage")).floatValue()
                         : 0.0f;
-                String uncoveredCode = coverageInfo.get("methodCode").toString();
-                List<String> uncoveredLines = (List<String>) coverageInfo.get("uncoveredLines");
+                String uncoveredCode = mergedCoverageInfo.get("methodCode").toString();
+                List<String> uncoveredLines = (List<String>) mergedCoverageInfo.get("uncoveredLines");
                 COVERUP.uncoveredLines=uncoveredLines;
                 COVERUP.coverage_message= Arrays.asList(uncoveredCode);
                 config.getLogger().info("Coverage Analysis for Method < " + promptInfo.getMethodInfo().getMethodName() + " >: " +
                         "Line Coverage: " + lineCoverage + "%\n" +
+                        "Merged Line Coverage: " + mergedCoverageInfo.get("lineCoverage") + "%\n" +
                         "Method Code:\n" + uncoveredCode + "\n" +
                         "Uncovered Lines: " + uncoveredLines);
 
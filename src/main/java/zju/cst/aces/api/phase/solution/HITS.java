@@ -15,6 +15,7 @@ import zju.cst.aces.util.JsonResponseProcessor;
 
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 
 public class HITS extends PhaseImpl {
@@ -131,7 +132,7 @@ public class HITS extends PhaseImpl {
          */
         public void generateMethodSlice(List<ChatMessage> prompt, RoundRecord record, PromptInfo promptInfo) {
 
-            if (MethodRunner.isExceedMaxTokens(config.getMaxPromptTokens(), prompt)) {
+            if (MethodRunner.isExceedMaxTokens(config.getMaxPromptTokens(), config.getModel().getModelName(), prompt)) {
                 config.getLogger().error("Exceed max prompt tokens: " + methodInfo.methodName + " Skipped.");
                 record.setPromptToken(-1);
                 record.setHasCode(false);
@@ -142,7 +143,7 @@ public class HITS extends PhaseImpl {
             String slicePath = "methodSlice/" + promptInfo.getClassName() + "/" + promptInfo.getMethodName();
             Path fullDirectoryPath = config.tmpOutput.resolve(slicePath); //todo 每次初始生成需要将文件夹清空
 
-            ChatResponse response = ChatGenerator.chat(config, prompt);
+            ChatResponse response = ChatGenerator.chat(config, prompt, record);
             String content = JsonResponseProcessor.getJsonContentByResponse(response.toString()); //todo get slice json result
             config.getLogger().debug("[Response]:\n" + content);
 
@@ -168,7 +169,7 @@ public class HITS extends PhaseImpl {
             if (!success) { //If getting method slices fails
                 for (int i = 0; i < 3; i++) { // todo 这里暂定3次，可以在config中设置
                     try {
-                        response = ChatGenerator.chat(config, prompt);
+                        response = ChatGenerator.chat(config, prompt, record);
                         content = JsonResponseProcessor.getJsonContentByResponse(response.toString());
                         if (content != null) {
                             JsonResponseProcessor.JsonData info = JsonResponseProcessor.extractInfoFromJson(content);
@@ -177,6 +178,8 @@ public class HITS extends PhaseImpl {
                                 break;
                             }
                         }
+                    } catch (CancellationException e) {
+                        throw e;
                     } catch (Exception e) {
                         config.getLogger().debug("generate method slices failed with exception: " + e.getMessage());
                     }
@@ -185,6 +188,7 @@ public class HITS extends PhaseImpl {
 
             record.setPromptToken(response.getUsage().getPromptTokens());
             record.setResponseToken(response.getUsage().getCompletionTokens());
+            record.setCacheHit(response.isCached());
             record.setPrompt(prompt);
             record.setResponse(content);
 
@@ -5,6 +5,8 @@ import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.impl.Parser;
 import zju.cst.aces.parser.ProjectParser;
 
+import java.io.IOException;
+
 public  class Preparation {
     private final Config config;
 
@@ -15,6 +17,18 @@ public  class Preparation {
     public void execute() {
         Parser parser = new Parser(new ProjectParser(config), config.getProject(), config.getParseOutput(), config.getLogger());
         process(parser);
+        loadInfoRepository();
+    }
+
+    /**
+     * Load the parse output into the shared in-memory repository used by runners and prompt templates.
+     */
+    public void loadInfoRepository() {
+        try {
+            config.getInfoRepository().load();
+        } catch (IOException e) {
+            config.getLogger().warn("Failed to load parsed class info: " + e);
+        }
     }
 
     public void process(PreProcess preProcessor) {
@@ -83,7 +83,7 @@ public class TestGeneration {
 
     public String generateTest(List<ChatMessage> prompt, RoundRecord record) {
 
-        if (MethodRunner.isExceedMaxTokens(config.getMaxPromptTokens(), prompt)) {
+        if (MethodRunner.isExceedMaxTokens(config.getMaxPromptTokens(), config.getModel().getModelName(), prompt)) {
             config.getLogger().error("Exceed max prompt tokens: " + methodInfo.methodName + " Skipped.");
             record.setPromptToken(-1);
             record.setHasCode(false);
@@ -92,13 +92,14 @@ public class TestGeneration {
 
         config.getLogger().debug("[Prompt]:\n" + prompt);
 
-        ChatResponse response = ChatGenerator.chat(config, prompt);
+        ChatResponse response = ChatGenerator.chat(config, prompt, record);
         String content = ChatGenerator.getContentByResponse(response);
         config.getLogger().debug("[Response]:\n" + content);
         String code = ChatGenerator.extractCodeByContent(content);
 
         record.setPromptToken(response.getUsage().getPromptTokens());
         record.setResponseToken(response.getUsage().getCompletionTokens());
+        record.setCacheHit(response.isCached());
         record.setPrompt(prompt);
         record.setResponse(content);
         if (code.isEmpty()) {
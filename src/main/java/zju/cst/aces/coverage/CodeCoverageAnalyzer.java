@@ -1,29 +1,12 @@
 package zju.cst.aces.coverage;
 
 import org.jacoco.core.analysis.*;
-import org.jacoco.core.data.ExecutionDataStore;
-import org.jacoco.core.data.SessionInfoStore;
-import org.jacoco.core.instr.Instrumenter;
-import org.jacoco.core.runtime.IRuntime;
-import org.jacoco.core.runtime.LoggerRuntime;
-import org.jacoco.core.runtime.RuntimeData;
-import org.junit.platform.engine.discovery.DiscoverySelectors;
-import org.junit.platform.launcher.Launcher;
-import org.junit.platform.launcher.LauncherDiscoveryRequest;
-import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
-import org.junit.platform.launcher.core.LauncherFactory;
-import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
-import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import org.objectweb.asm.Type;
 
-import javax.tools.*;
-import java.io.*;
-import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * 调用analyzeCoverage方法，传入测试类的源代码、目标类名和方法签名，即可获取方法的覆盖率信息
@@ -48,7 +31,8 @@ public class CodeCoverageAnalyzer {
                 return super.loadClass(name);
             }
             if (definitions.containsKey(name)) {
-                return findClass(name);
+                Class<?> loaded = findLoadedClass(name);
+                return loaded != null ? loaded : findClass(name);
             }
             return super.loadClass(name);
         }
@@ -76,105 +60,19 @@ public class CodeCoverageAnalyzer {
      * @throws Exception
      */
     public Map<String, Object> analyzeCoverage(String testSourceCode, String targetTestName, String targetClassName, String methodSignature, String targetClassCompiledDir, String targetClassSourceDir, List<String> dependencies) throws Exception {
-
-        final IRuntime runtime = new LoggerRuntime();
-        final Instrumenter instr = new Instrumenter(runtime);
-
-        byte[] instrumentedTest = compileAndInstrument(testSourceCode, targetTestName, instr, targetClassCompiledDir, dependencies);
-        byte[] instrumentedClass = instrumentTargetClass(targetClassName, targetClassCompiledDir, instr);
-
-        final RuntimeData data = new RuntimeData();
-        runtime.startup(data);
-
-        URL[] urls = dependencies.stream().map(File::new).map(file -> {
-            try {
-                return file.toURI().toURL();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }).toArray(URL[]::new);
-        // 确保目标类编译目录在依赖列表中
-
-    // 修改此行代码，传入当前上下文类加载器作为父类
-        MemoryClassLoader memoryClassLoader = new MemoryClassLoader(urls, Thread.currentThread().getContextClassLoader());
-        memoryClassLoader.addDefinition(targetTestName, instrumentedTest);
-        memoryClassLoader.addDefinition(targetClassName, instrumentedClass);
-
-        Class<?> testClass = memoryClassLoader.loadClass(targetTestName);
-
-        LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
-                .selectors(DiscoverySelectors.selectClass(testClass))
-                .build();
-        // 不需要显式创建 TestEngine，使用默认配置即可
-        Launcher launcher = LauncherFactory.create();  // 默认会自动注册 JUnit Jupiter 引擎
-        SummaryGeneratingListener listener = new SummaryGeneratingListener();
-        launcher.registerTestExecutionListeners(listener);
-        launcher.execute(request);
-
-
-        TestExecutionSummary summary = listener.getSummary();
-        summary.printTo(new PrintWriter(System.out));
-
-        final ExecutionDataStore executionData = new ExecutionDataStore();
-        final SessionInfoStore sessionInfos = new SessionInfoStore();
-        data.collect(executionData, sessionInfos, false);
-        runtime.shutdown();
-
-        final CoverageBuilder coverageBuilder = new CoverageBuilder();
-        final Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
-        InputStream originalClass = getTargetClass(targetClassName, targetClassCompiledDir);
-        analyzer.analyzeClass(originalClass, targetClassName);
-        originalClass.close();
-
-        return getMethodCoverageInfo(coverageBuilder, targetClassName, methodSignature, targetClassSourceDir);
+        return CoverageSession.forProject(targetClassCompiledDir, targetClassSourceDir, dependencies)
+                .run(testSourceCode, targetTestName, targetClassName, methodSignature);
     }
 
-    private byte[] compileAndInstrument(String sourceCode, String className, Instrumenter instr, String targetClassCompiledDir, List<String> dependencies) throws IOException {
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-
-        File outputDir = new File("compiled_classes");
-        if (!outputDir.exists()) {
-            outputDir.mkdirs();
-        }
-
-        List<File> classPath = new ArrayList<>();
-        classPath.add(new File(targetClassCompiledDir));
-        for (String dependency : dependencies) {
-            classPath.add(new File(dependency));
-        }
-        fileManager.setLocation(StandardLocation.CLASS_OUTPUT,Arrays.asList(outputDir));
-        fileManager.setLocation(StandardLocation.CLASS_PATH, classPath);
-
-        JavaFileObject file = new JavaSourceFromString(className, sourceCode);
-        Iterable<? extends JavaFileObject> compilationUnits =Arrays.asList(file);
-        compiler.getTask(null, fileManager, null, null, null, compilationUnits).call();
-
-        File compiledFile = new File(outputDir, className.replace('.', '/') + ".class");
-        InputStream compiledClass = new FileInputStream(compiledFile);
-        byte[] instrumentedClass = instr.instrument(compiledClass, className);
-        compiledClass.close();
-        // 删除编译后的 .class 文件
-        if (compiledFile.exists()) {
-            compiledFile.delete();
-        }
-        return instrumentedClass;
-    }
-
-    private byte[] instrumentTargetClass(final String targetClassName, final String targetClassCompiledDir, Instrumenter instr) throws IOException {
-        File compiledFile = new File(targetClassCompiledDir, targetClassName.replace('.', '/') + ".class");
-        InputStream compiledClass = new FileInputStream(compiledFile);
-        byte[] instrumentedClass = instr.instrument(compiledClass, targetClassName);
-        compiledClass.close();
-        return instrumentedClass;
-    }
-
-    private InputStream getTargetClass(final String name, final String compiledDir) throws IOException {
-        File compiledFile = new File(compiledDir, name.replace('.', '/') + ".class");
-        return new FileInputStream(compiledFile);
+    /**
+     * 目标方法在所有已分析测试下的合并覆盖率，结果格式与analyzeCoverage相同
+     */
+    public Map<String, Object> getMergedCoverage(String targetClassName, String methodSignature, String targetClassCompiledDir, String targetClassSourceDir, List<String> dependencies) throws Exception {
+        return CoverageSession.forProject(targetClassCompiledDir, targetClassSourceDir, dependencies)
+                .getMergedCoverage(targetClassName, methodSignature);
     }
 
-    private Map<String, Object> getMethodCoverageInfo(final CoverageBuilder coverageBuilder, final String className, final String methodSignature, final String sourceDir) throws IOException {
+    Map<String, Object> getMethodCoverageInfo(final CoverageBuilder coverageBuilder, final String className, final String methodSignature, final Supplier<List<String>> sourceReader) {
         Map<String, Object> resultMap = new HashMap<>();
         List<Integer> uncoveredLines = new ArrayList<>();
         StringBuilder methodCode = new StringBuilder();
@@ -189,8 +87,7 @@ public class CodeCoverageAnalyzer {
                         resultMap.put("branchCoverage", getCoveragePercentage(mc.getBranchCounter()));
                         resultMap.put("lineCoverage", getCoveragePercentage(mc.getLineCounter()));
 
-                        String sourceFileName = sourceDir + File.separator + className.replace('.', File.separatorChar) + ".java";
-                        List<String> sourceLines = Files.readAllLines(Paths.get(sourceFileName));
+                        List<String> sourceLines = sourceReader.get();
 
                         boolean insideMethod = false;
                         int openBraces = 0;
@@ -365,20 +262,4 @@ public class CodeCoverageAnalyzer {
         System.out.println("Method Code:\n" + coverageInfo.get("methodCode"));
         System.out.println("Uncovered Lines: " + coverageInfo.get("uncoveredLines"));
     }
-
-
-
-    static class JavaSourceFromString extends SimpleJavaFileObject {
-        final String code;
-
-        JavaSourceFromString(String name, String code) {
-            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
-            this.code = code;
-        }
-
-        @Override
-        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
-            return code;
-        }
-    }
 }
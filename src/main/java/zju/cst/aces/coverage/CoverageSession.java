@@ -0,0 +1,210 @@
+package zju.cst.aces.coverage;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.IRuntime;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import zju.cst.aces.coverage.CodeCoverageAnalyzer.MemoryClassLoader;
+import zju.cst.aces.util.InMemoryCompiler;
+import zju.cst.aces.util.TestLauncher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coverage of many tests against the classes of one project, with a single JaCoCo runtime.
+ * Target classes are instrumented once and their bytes cached, tests are compiled in memory,
+ * and the source files used to annotate uncovered lines are read once.
+ * Each run reports the coverage of that test alone, and the session merges the coverage of all runs per target method,
+ * so the attempts of a method can be told which lines none of them has covered yet.
+ * Tests are compiled, loaded and analyzed concurrently, only their execution is serialized per session,
+ * since the execution data of concurrent runs could not be told apart.
+ */
+public class CoverageSession {
+    private static final Map<List<String>, CoverageSession> SESSIONS = new ConcurrentHashMap<>();
+
+    private final String compiledDir;
+    private final String sourceDir;
+    private final URL[] urls;
+    private final InMemoryCompiler compiler;
+    private final IRuntime runtime = new LoggerRuntime();
+    private final Instrumenter instrumenter = new Instrumenter(runtime);
+    private final RuntimeData data = new RuntimeData();
+    private final Object executionLock = new Object();
+    private final Map<String, ExecutionDataStore> merged = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> originalClasses = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> instrumentedClasses = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> sourceLines = new ConcurrentHashMap<>();
+    private final CodeCoverageAnalyzer analyzer = new CodeCoverageAnalyzer();
+
+    public CoverageSession(String compiledDir, String sourceDir, List<String> dependencies) throws Exception {
+        this.compiledDir = compiledDir;
+        this.sourceDir = sourceDir;
+        this.urls = new URL[dependencies.size()];
+        for (int i = 0; i < dependencies.size(); i++) {
+            this.urls[i] = toURL(new File(dependencies.get(i)));
+        }
+        List<String> classpath = new ArrayList<>();
+        classpath.add(compiledDir);
+        classpath.addAll(dependencies);
+        this.compiler = InMemoryCompiler.forClasspath(classpath);
+        runtime.startup(data);
+    }
+
+    /**
+     * Get the session shared by all callers analyzing the same project.
+     */
+    public static CoverageSession forProject(String compiledDir, String sourceDir, List<String> dependencies) {
+        List<String> key = new ArrayList<>();
+        key.add(compiledDir);
+        key.add(sourceDir);
+        key.addAll(dependencies);
+        return SESSIONS.computeIfAbsent(key, k -> {
+            try {
+                return new CoverageSession(compiledDir, sourceDir, dependencies);
+            } catch (Exception e) {
+                throw new RuntimeException("In CoverageSession.forProject: " + e);
+            }
+        });
+    }
+
+    /**
+     * Compile and run one test, and get the coverage it achieves on the target method.
+     * The result has the same keys as {@link CodeCoverageAnalyzer#analyzeCoverage}.
+     */
+    public Map<String, Object> run(String testSourceCode, String testName,
+                                                String targetClassName, String methodSignature) throws Exception {
+        InMemoryCompiler.CompilationResult compilation = compiler.compile(testName.substring(testName.lastIndexOf('.') + 1), testSourceCode);
+        if (!compilation.isSuccess()) {
+            throw new IOException("In CoverageSession.run: failed to compile " + testName);
+        }
+
+        MemoryClassLoader classLoader = new MemoryClassLoader(urls, Thread.currentThread().getContextClassLoader());
+        ExecutionDataStore executionData = new ExecutionDataStore();
+        try {
+            compilation.getClasses().forEach(classLoader::addDefinition);
+            classLoader.addDefinition(targetClassName, getInstrumentedClass(targetClassName));
+
+            LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+                    .selectors(DiscoverySelectors.selectClass(classLoader.loadClass(testName)))
+                    .build();
+            TestExecutionSummary summary;
+            synchronized (executionLock) {
+                try {
+                    summary = TestLauncher.execute(request);
+                } finally {
+                    // Copy the probes, collecting with reset clears the instances handed to the visitor
+                    data.collect(probes -> executionData.put(
+                            new ExecutionData(probes.getId(), probes.getName(), probes.getProbes().clone())),
+                            new SessionInfoStore(), true);
+                }
+            }
+            summary.printTo(new PrintWriter(System.out));
+        } finally {
+            TestLauncher.close(classLoader);
+        }
+        ExecutionDataStore methodData = merged.computeIfAbsent(methodKey(targetClassName, methodSignature), k -> new ExecutionDataStore());
+        synchronized (methodData) {
+            // Merge copies, put keeps the first instance of a class and merges later ones into it
+            executionData.getContents().forEach(d -> methodData.put(new ExecutionData(d.getId(), d.getName(), d.getProbes().clone())));
+        }
+        return analyze(executionData, targetClassName, methodSignature);
+    }
+
+    /**
+     * Coverage of the target method by all tests run for it in this session so far.
+     * The result has the same keys as {@link #run}.
+     */
+    public Map<String, Object> getMergedCoverage(String targetClassName, String methodSignature) throws IOException {
+        ExecutionDataStore methodData = merged.computeIfAbsent(methodKey(targetClassName, methodSignature), k -> new ExecutionDataStore());
+        ExecutionDataStore snapshot = new ExecutionDataStore();
+        synchronized (methodData) {
+            methodData.getContents().forEach(d -> snapshot.put(new ExecutionData(d.getId(), d.getName(), d.getProbes().clone())));
+        }
+        return analyze(snapshot, targetClassName, methodSignature);
+    }
+
+    /**
+     * Shut down the JaCoCo runtime of every session, at the end of a run.
+     */
+    public static void closeAll() {
+        for (List<String> key : new ArrayList<>(SESSIONS.keySet())) {
+            CoverageSession session = SESSIONS.remove(key);
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    private void close() {
+        synchronized (executionLock) {
+            runtime.shutdown();
+        }
+        merged.clear();
+    }
+
+    private static String methodKey(String targetClassName, String methodSignature) {
+        return targetClassName + "#" + methodSignature;
+    }
+
+    private Map<String, Object> analyze(ExecutionDataStore executionData, String targetClassName, String methodSignature) throws IOException {
+        CoverageBuilder coverageBuilder = new CoverageBuilder();
+        Analyzer coverageAnalyzer = new Analyzer(executionData, coverageBuilder);
+        coverageAnalyzer.analyzeClass(getOriginalClass(targetClassName), targetClassName);
+        return analyzer.getMethodCoverageInfo(coverageBuilder, targetClassName, methodSignature, () -> getSourceLines(targetClassName));
+    }
+
+    private byte[] getOriginalClass(String className) throws IOException {
+        byte[] bytes = originalClasses.get(className);
+        if (bytes == null) {
+            bytes = Files.readAllBytes(Paths.get(compiledDir, className.replace('.', '/') + ".class"));
+            originalClasses.put(className, bytes);
+        }
+        return bytes;
+    }
+
+    private byte[] getInstrumentedClass(String className) throws IOException {
+        byte[] bytes = instrumentedClasses.get(className);
+        if (bytes == null) {
+            bytes = instrumenter.instrument(getOriginalClass(className), className);
+            instrumentedClasses.put(className, bytes);
+        }
+        return bytes;
+    }
+
+    private List<String> getSourceLines(String className) {
+        return sourceLines.computeIfAbsent(className, name -> {
+            Path sourceFile = Paths.get(sourceDir, name.replace('.', File.separatorChar) + ".java");
+            try {
+                return Collections.unmodifiableList(Files.readAllLines(sourceFile));
+            } catch (IOException e) {
+                throw new RuntimeException("In CoverageSession.getSourceLines: " + e);
+            }
+        });
+    }
+
+    private static URL toURL(File file) {
+        try {
+            return file.toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("In CoverageSession.toURL: " + e);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package zju.cst.aces.coverage;
+
+import lombok.Data;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import zju.cst.aces.runner.WorkScheduler;
+import zju.cst.aces.util.InMemoryCompiler;
+import zju.cst.aces.util.fork.ForkedTestPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Mutation analysis of one focal method against one test.
+ * Mutants of the focal method only are generated with ASM from the compiled class and sent together with the test
+ * to the pool of forked test workers, where each one is loaded in a class loader of its own. The mutants are run
+ * as units of the scheduler, under compile permits. A mutant whose run takes much longer than the run on the
+ * original class has its worker killed and is counted as killed, like PIT does.
+ * Killed means more failing tests than on the original class.
+ */
+public class MutationSession {
+    private static final Map<List<String>, MutationSession> SESSIONS = new ConcurrentHashMap<>();
+    private static final double TIMEOUT_FACTOR = 1.5;
+    private static final long TIMEOUT_CONSTANT_MILLIS = 3000;
+    private static final long BASELINE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Map<Integer, Integer> NEGATED = new HashMap<>();
+    private static final Map<Integer, Integer> BOUNDARY = new HashMap<>();
+    private static final Map<Integer, Integer> MATH = new HashMap<>();
+    private static final Map<Integer, String> MATH_SYMBOLS = new HashMap<>();
+
+    static {
+        int[][] negated = {{Opcodes.IFEQ, Opcodes.IFNE}, {Opcodes.IFLT, Opcodes.IFGE}, {Opcodes.IFGT, Opcodes.IFLE},
+                {Opcodes.IF_ICMPEQ, Opcodes.IF_ICMPNE}, {Opcodes.IF_ICMPLT, Opcodes.IF_ICMPGE},
+                {Opcodes.IF_ICMPGT, Opcodes.IF_ICMPLE}, {Opcodes.IF_ACMPEQ, Opcodes.IF_ACMPNE},
+                {Opcodes.IFNULL, Opcodes.IFNONNULL}};
+        for (int[] pair : negated) {
+            NEGATED.put(pair[0], pair[1]);
+            NEGATED.put(pair[1], pair[0]);
+        }
+        int[][] boundary = {{Opcodes.IFLT, Opcodes.IFLE}, {Opcodes.IFGT, Opcodes.IFGE},
+                {Opcodes.IF_ICMPLT, Opcodes.IF_ICMPLE}, {Opcodes.IF_ICMPGT, Opcodes.IF_ICMPGE}};
+        for (int[] pair : boundary) {
+            BOUNDARY.put(pair[0], pair[1]);
+            BOUNDARY.put(pair[1], pair[0]);
+        }
+        // Same layout for int, long, float and double: add, sub, mul, div, rem
+        int[] bases = {Opcodes.IADD, Opcodes.LADD, Opcodes.FADD, Opcodes.DADD};
+        for (int base : bases) {
+            MATH.put(base, base + 4);                  // + -> -
+            MATH.put(base + 4, base);                  // - -> +
+            MATH.put(base + 8, base + 12);             // * -> /
+            MATH.put(base + 12, base + 8);             // / -> *
+            MATH.put(base + 16, base + 8);             // % -> *
+            MATH_SYMBOLS.put(base, "+");
+            MATH_SYMBOLS.put(base + 4, "-");
+            MATH_SYMBOLS.put(base + 8, "*");
+            MATH_SYMBOLS.put(base + 12, "/");
+            MATH_SYMBOLS.put(base + 16, "%");
+        }
+        int[][] bitwise = {{Opcodes.IAND, Opcodes.IOR}, {Opcodes.IOR, Opcodes.IAND}, {Opcodes.IXOR, Opcodes.IAND},
+                {Opcodes.ISHL, Opcodes.ISHR}, {Opcodes.ISHR, Opcodes.ISHL}, {Opcodes.IUSHR, Opcodes.ISHL},
+                {Opcodes.LAND, Opcodes.LOR}, {Opcodes.LOR, Opcodes.LAND}, {Opcodes.LXOR, Opcodes.LAND},
+                {Opcodes.LSHL, Opcodes.LSHR}, {Opcodes.LSHR, Opcodes.LSHL}, {Opcodes.LUSHR, Opcodes.LSHL}};
+        for (int[] pair : bitwise) {
+            MATH.put(pair[0], pair[1]);
+        }
+        String[] bitwiseSymbols = {"&", "|", "^", "<<", ">>", ">>>"};
+        int[][] bitwiseOpcodes = {{Opcodes.IAND, Opcodes.IOR, Opcodes.IXOR, Opcodes.ISHL, Opcodes.ISHR, Opcodes.IUSHR},
+                {Opcodes.LAND, Opcodes.LOR, Opcodes.LXOR, Opcodes.LSHL, Opcodes.LSHR, Opcodes.LUSHR}};
+        for (int[] opcodes : bitwiseOpcodes) {
+            for (int i = 0; i < opcodes.length; i++) {
+                MATH_SYMBOLS.put(opcodes[i], bitwiseSymbols[i]);
+            }
+        }
+    }
+
+    public enum Operator {
+        NEGATE_CONDITIONALS,
+        CONDITIONALS_BOUNDARY,
+        MATH,
+        INCREMENTS,
+        RETURN_VALUES,
+        VOID_METHOD_CALLS
+    }
+
+    public enum Status {
+        KILLED,
+        TIMED_OUT,
+        SURVIVED,
+        NON_VIABLE
+    }
+
+    @Data
+    public static class Mutant {
+        private final int index;
+        private final Operator operator;
+        private final int line;
+        private final String description;
+        private Status status;
+    }
+
+    private final String compiledDir;
+    private final String sourceDir;
+    private final List<String> dependencies;
+    private final InMemoryCompiler compiler;
+    private final Map<String, List<String>> sourceLines = new ConcurrentHashMap<>();
+
+    public MutationSession(String compiledDir, String sourceDir, List<String> dependencies) {
+        this.compiledDir = compiledDir;
+        this.sourceDir = sourceDir;
+        List<String> classpath = new ArrayList<>();
+        classpath.add(compiledDir);
+        classpath.addAll(dependencies);
+        this.dependencies = classpath;
+        this.compiler = InMemoryCompiler.forClasspath(classpath);
+    }
+
+    /**
+     * Get the session shared by all callers analyzing the same project.
+     */
+    public static MutationSession forProject(String compiledDir, String sourceDir, List<String> dependencies) {
+        List<String> key = new ArrayList<>();
+        key.add(compiledDir);
+        key.add(sourceDir);
+        key.addAll(dependencies);
+        return SESSIONS.computeIfAbsent(key, k -> new MutationSession(compiledDir, sourceDir, dependencies));
+    }
+
+    /**
+     * Compile the test, then run it against every mutant of the target method in forkCount workers at most.
+     * Must not be called while holding a compile permit, each run takes one.
+     * @return The mutants with their status, empty if the test does not pass on the original class
+     */
+    public List<Mutant> run(String testSourceCode, String testName, String targetClassName, String methodName,
+                            String methodDescriptor, WorkScheduler scheduler, int forkCount) throws Exception {
+        InMemoryCompiler.CompilationResult compilation = compiler.compile(testName.substring(testName.lastIndexOf('.') + 1), testSourceCode);
+        if (!compilation.isSuccess()) {
+            throw new IOException("In MutationSession.run: failed to compile " + testName);
+        }
+        byte[] original = Files.readAllBytes(getClassFile(targetClassName));
+        Map<String, byte[]> nestedClasses = getNestedClasses(targetClassName);
+
+        ForkedTestPool pool = ForkedTestPool.get(dependencies, new File(compiledDir), Math.max(1, forkCount));
+
+        long start = System.nanoTime();
+        RunResult baseline = scheduler.withCompilePermit(() -> execute(pool, testName, compilation.getClasses(),
+                nestedClasses, targetClassName, original, BASELINE_TIMEOUT_MILLIS));
+        long baselineMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (baseline == null || baseline.succeeded == 0) {
+            return new ArrayList<>();
+        }
+        long timeoutMillis = (long) (baselineMillis * TIMEOUT_FACTOR) + TIMEOUT_CONSTANT_MILLIS;
+
+        List<Mutant> mutants = findMutants(original, methodName, methodDescriptor);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Mutant mutant : mutants) {
+            futures.add(scheduler.submit(() -> {
+                byte[] mutated;
+                try {
+                    mutated = mutate(original, methodName, methodDescriptor, mutant);
+                } catch (RuntimeException e) {
+                    mutant.setStatus(Status.NON_VIABLE);
+                    return;
+                }
+                RunResult result = scheduler.withCompilePermit(() -> execute(pool, testName, compilation.getClasses(),
+                        nestedClasses, targetClassName, mutated, timeoutMillis));
+                if (result == null) {
+                    mutant.setStatus(Status.TIMED_OUT);
+                } else if (result.failed > baseline.failed || result.succeeded < baseline.succeeded) {
+                    mutant.setStatus(Status.KILLED);
+                } else {
+                    mutant.setStatus(Status.SURVIVED);
+                }
+            }));
+        }
+        scheduler.join(futures);
+        return mutants;
+    }
+
+    /**
+     * One line per mutant, with the source line it changes, for the prompt.
+     */
+    public String describe(List<Mutant> mutants, String targetClassName) {
+        List<String> lines = getSourceLines(targetClassName);
+        StringBuilder sb = new StringBuilder();
+        for (Mutant mutant : mutants) {
+            sb.append("Line ").append(mutant.getLine());
+            if (mutant.getLine() > 0 && mutant.getLine() <= lines.size()) {
+                sb.append(" `").append(lines.get(mutant.getLine() - 1).trim()).append('`');
+            }
+            sb.append(": ").append(mutant.getDescription()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Run the test in a forked worker with the given bytes of the target class, null if it did not finish
+     * within the timeout. The worker of a run that times out is killed, so endless loops do not keep running.
+     */
+    private RunResult execute(ForkedTestPool pool, String testName, Map<String, byte[]> testClasses,
+                              Map<String, byte[]> nestedClasses, String targetClassName, byte[] targetClass,
+                              long timeoutMillis) throws Exception {
+        // The nest of the target class is loaded with it, so they still share a runtime package
+        Map<String, byte[]> classes = new HashMap<>(nestedClasses);
+        classes.put(targetClassName, targetClass);
+        classes.putAll(testClasses);
+        try {
+            TestExecutionSummary summary = pool.execute(testName, classes, timeoutMillis, TimeUnit.MILLISECONDS);
+            return new RunResult(summary.getTestsSucceededCount(), summary.getTestsFailedCount());
+        } catch (TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            // A mutant that cannot even be loaded fails its tests
+            return new RunResult(0, Long.MAX_VALUE);
+        }
+    }
+
+    private static class RunResult {
+        final long succeeded;
+        final long failed;
+
+        RunResult(long succeeded, long failed) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+        }
+    }
+
+    static List<Mutant> findMutants(byte[] classBytes, String methodName, String methodDescriptor) {
+        List<Mutant> mutants = new ArrayList<>();
+        MethodNode method = findMethod(classBytes, methodName, methodDescriptor);
+        if (method == null) {
+            return mutants;
+        }
+        Type returnType = Type.getReturnType(method.desc);
+        int line = 0;
+        AbstractInsnNode[] instructions = method.instructions.toArray();
+        for (int index = 0; index < instructions.length; index++) {
+            AbstractInsnNode insn = instructions[index];
+            if (insn instanceof LineNumberNode) {
+                line = ((LineNumberNode) insn).line;
+                continue;
+            }
+            int opcode = insn.getOpcode();
+            if (NEGATED.containsKey(opcode)) {
+                mutants.add(new Mutant(index, Operator.NEGATE_CONDITIONALS, line, "negated conditional"));
+            }
+            if (BOUNDARY.containsKey(opcode)) {
+                mutants.add(new Mutant(index, Operator.CONDITIONALS_BOUNDARY, line, "changed conditional boundary"));
+            }
+            if (MATH.containsKey(opcode)) {
+                mutants.add(new Mutant(index, Operator.MATH, line,
+                        "replaced " + MATH_SYMBOLS.get(opcode) + " with " + MATH_SYMBOLS.get(MATH.get(opcode))));
+            }
+            if (insn instanceof IincInsnNode && ((IincInsnNode) insn).incr != 0) {
+                mutants.add(new Mutant(index, Operator.INCREMENTS, line, "negated increment of a local variable"));
+            }
+            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.ARETURN) {
+                mutants.add(new Mutant(index, Operator.RETURN_VALUES, line, describeReturn(returnType)));
+            }
+            if (insn instanceof MethodInsnNode && isVoidCall((MethodInsnNode) insn)) {
+                MethodInsnNode call = (MethodInsnNode) insn;
+                mutants.add(new Mutant(index, Operator.VOID_METHOD_CALLS, line,
+                        "removed call to " + call.owner.replace('/', '.') + "::" + call.name));
+            }
+        }
+        return mutants;
+    }
+
+    /**
+     * Bytes of the class with the one change of the mutant. Stack map frames stay valid, since no change
+     * alters the types on the stack or in the locals where the frames are.
+     */
+    static byte[] mutate(byte[] classBytes, String methodName, String methodDescriptor, Mutant mutant) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, 0);
+        MethodNode method = null;
+        for (MethodNode candidate : classNode.methods) {
+            if (candidate.name.equals(methodName) && candidate.desc.equals(methodDescriptor)) {
+                method = candidate;
+                break;
+            }
+        }
+        if (method == null) {
+            throw new IllegalStateException("In MutationSession.mutate: no method " + methodName + methodDescriptor);
+        }
+        InsnList instructions = method.instructions;
+        AbstractInsnNode insn = instructions.get(mutant.getIndex());
+        switch (mutant.getOperator()) {
+            case NEGATE_CONDITIONALS:
+                ((JumpInsnNode) insn).setOpcode(NEGATED.get(insn.getOpcode()));
+                break;
+            case CONDITIONALS_BOUNDARY:
+                ((JumpInsnNode) insn).setOpcode(BOUNDARY.get(insn.getOpcode()));
+                break;
+            case MATH:
+                ((InsnNode) insn).setOpcode(MATH.get(insn.getOpcode()));
+                break;
+            case INCREMENTS:
+                ((IincInsnNode) insn).incr = -((IincInsnNode) insn).incr;
+                break;
+            case RETURN_VALUES:
+                instructions.insertBefore(insn, mutateReturn(Type.getReturnType(method.desc)));
+                break;
+            case VOID_METHOD_CALLS:
+                MethodInsnNode call = (MethodInsnNode) insn;
+                InsnList pops = new InsnList();
+                Type[] arguments = Type.getArgumentTypes(call.desc);
+                for (int i = arguments.length - 1; i >= 0; i--) {
+                    pops.add(new InsnNode(arguments[i].getSize() == 2 ? Opcodes.POP2 : Opcodes.POP));
+                }
+                if (call.getOpcode() != Opcodes.INVOKESTATIC) {
+                    pops.add(new InsnNode(Opcodes.POP));
+                }
+                instructions.insertBefore(insn, pops);
+                instructions.remove(insn);
+                break;
+            default:
+                throw new IllegalStateException("In MutationSession.mutate: " + mutant.getOperator());
+        }
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classNode.accept(writer);
+        return writer.toByteArray();
+    }
+
+    private static InsnList mutateReturn(Type returnType) {
+        InsnList insns = new InsnList();
+        switch (returnType.getSort()) {
+            case Type.BOOLEAN:
+                insns.add(new InsnNode(Opcodes.ICONST_1));
+                insns.add(new InsnNode(Opcodes.IXOR));
+                break;
+            case Type.LONG:
+                insns.add(new InsnNode(Opcodes.LCONST_1));
+                insns.add(new InsnNode(Opcodes.LADD));
+                break;
+            case Type.FLOAT:
+                insns.add(new InsnNode(Opcodes.FCONST_1));
+                insns.add(new InsnNode(Opcodes.FADD));
+                break;
+            case Type.DOUBLE:
+                insns.add(new InsnNode(Opcodes.DCONST_1));
+                insns.add(new InsnNode(Opcodes.DADD));
+                break;
+            case Type.OBJECT:
+            case Type.ARRAY:
+                insns.add(new InsnNode(Opcodes.POP));
+                insns.add(new InsnNode(Opcodes.ACONST_NULL));
+                break;
+            default:
+                insns.add(new InsnNode(Opcodes.ICONST_1));
+                insns.add(new InsnNode(Opcodes.IADD));
+        }
+        return insns;
+    }
+
+    private static String describeReturn(Type returnType) {
+        switch (returnType.getSort()) {
+            case Type.BOOLEAN:
+                return "negated the boolean return value";
+            case Type.OBJECT:
+            case Type.ARRAY:
+                return "replaced the return value with null";
+            default:
+                return "replaced the return value x with x + 1";
+        }
+    }
+
+    private static boolean isVoidCall(MethodInsnNode call) {
+        return Type.getReturnType(call.desc).getSort() == Type.VOID
+                && !call.name.equals("<init>")
+                && call.getOpcode() != Opcodes.INVOKESPECIAL;
+    }
+
+    private static MethodNode findMethod(byte[] classBytes, String methodName, String methodDescriptor) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, 0);
+        for (MethodNode method : classNode.methods) {
+            if (method.name.equals(methodName) && method.desc.equals(methodDescriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private Path getClassFile(String className) {
+        return Paths.get(compiledDir, className.replace('.', '/') + ".class");
+    }
+
+    private Map<String, byte[]> getNestedClasses(String className) throws IOException {
+        Map<String, byte[]> classes = new HashMap<>();
+        Path classFile = getClassFile(className);
+        String prefix = classFile.getFileName().toString().replace(".class", "$");
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(classFile.getParent(), prefix + "*.class")) {
+            for (Path sibling : siblings) {
+                String fileName = sibling.getFileName().toString();
+                String simpleName = fileName.substring(0, fileName.length() - ".class".length());
+                String packageName = className.contains(".") ? className.substring(0, className.lastIndexOf('.') + 1) : "";
+                classes.put(packageName + simpleName, Files.readAllBytes(sibling));
+            }
+        }
+        return classes;
+    }
+
+    private List<String> getSourceLines(String className) {
+        return sourceLines.computeIfAbsent(className, name -> {
+            Path sourceFile = Paths.get(sourceDir, name.replace('.', File.separatorChar) + ".java");
+            try {
+                return Collections.unmodifiableList(Files.readAllLines(sourceFile));
+            } catch (IOException e) {
+                return Collections.emptyList();
+            }
+        });
+    }
+}
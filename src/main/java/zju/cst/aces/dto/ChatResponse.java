@@ -13,6 +13,8 @@ public class ChatResponse {
     private String object;
     private ChatUsage usage;
     private List<ChatChoice> choices;
+    // Served from the response cache, not part of the API response
+    private transient boolean cached;
 
     public List<ChatMessage> getMessages() {
         if (this.choices == null || this.choices.isEmpty()) return Collections.emptyList();
@@ -40,6 +40,7 @@ public class PromptInfo {
     public String max_coverage_test_code;
     public Integer sofiaActivations=0;
     public String methodDescriptor;
+    public String survivingMutants; // mutants of the focal method not killed by unitTest, for MUTAP
 
 
     public PromptInfo(boolean hasDep, String fullClassName, String methodName,
@@ -73,6 +74,7 @@ public class PromptInfo {
         this.setRecords(p.getRecords());
         this.setMethodInfo(p.getMethodInfo());
         this.setClassInfo(p.getClassInfo());
+        this.setSurvivingMutants(p.getSurvivingMutants());
     }
 
     public void addMethodDeps(String depClassName, String methodDep) {
@@ -12,6 +12,8 @@ public class RoundRecord {
     public String response;
     public int promptToken;
     public int responseToken;
+    public boolean cacheHit;
+    public boolean cancelled;
     public boolean hasCode;
     public String code;
     public boolean hasError;
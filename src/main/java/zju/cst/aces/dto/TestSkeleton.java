@@ -1,10 +1,10 @@
 package zju.cst.aces.dto;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import lombok.Data;
+import zju.cst.aces.parser.ParserFactory;
 
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -32,7 +32,7 @@ public class TestSkeleton {
         this.skeleton = skeleton;
         this.packageName = "";
 
-        CompilationUnit cu = StaticJavaParser.parse(skeleton);
+        CompilationUnit cu = ParserFactory.parse(skeleton);
         cu.getPackageDeclaration().ifPresent(p -> this.packageName = p.getNameAsString());
         this.testName = cu.findFirst(ClassOrInterfaceDeclaration.class)
                 .orElseThrow(() -> new NoSuchElementException("No ClassOrInterfaceDeclaration found"))
@@ -53,8 +53,8 @@ public class TestSkeleton {
     }
 
     public String build(String testMethod) {
-        CompilationUnit cu = StaticJavaParser.parse(skeleton);
-        MethodDeclaration tm = StaticJavaParser.parseMethodDeclaration(testMethod);
+        CompilationUnit cu = ParserFactory.parse(skeleton);
+        MethodDeclaration tm = ParserFactory.parseMethodDeclaration(testMethod);
         cu.getClassByName(testName).ifPresent(c -> c.addMember(tm));
         return cu.toString();
     }
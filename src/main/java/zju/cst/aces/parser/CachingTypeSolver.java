@@ -0,0 +1,108 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Root of the type solver stack, memoizing the lookups of all threads in a bounded LRU cache,
+ * unsolved ones included, so the same names are not searched through every solver again.
+ * The solver it wraps gets it as parent, so nested lookups of the wrapped solvers go through the cache too.
+ */
+public class CachingTypeSolver implements TypeSolver {
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private final TypeSolver delegate;
+    private volatile int capacity;
+    private TypeSolver parent;
+    private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingTypeSolver(TypeSolver delegate, int capacity) {
+        this.delegate = delegate;
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.cache = new LinkedHashMap<String, SymbolReference<ResolvedReferenceTypeDeclaration>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SymbolReference<ResolvedReferenceTypeDeclaration>> eldest) {
+                return size() > CachingTypeSolver.this.capacity;
+            }
+        };
+        delegate.setParent(this);
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        Objects.requireNonNull(parent);
+        if (this.parent != null) {
+            throw new IllegalStateException("This TypeSolver already has a parent.");
+        }
+        if (parent == this) {
+            throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+        }
+        this.parent = parent;
+    }
+
+    /**
+     * The lock is not held while the wrapped solver runs, since solving a type solves others from the root.
+     * Two threads missing the same name may both solve it, the last one is kept.
+     */
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        SymbolReference<ResolvedReferenceTypeDeclaration> reference;
+        synchronized (cache) {
+            reference = cache.get(name);
+        }
+        if (reference != null) {
+            hits.incrementAndGet();
+            return reference;
+        }
+        misses.incrementAndGet();
+        reference = delegate.tryToSolveType(name);
+        synchronized (cache) {
+            cache.put(name, reference);
+        }
+        return reference;
+    }
+
+    public void setCapacity(int capacity) {
+        if (capacity > 0) {
+            this.capacity = capacity;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (hit rate %.1f%%), %d cached types",
+                getHits(), getMisses(), getHitRate() * 100, size());
+    }
+}
@@ -0,0 +1,181 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory view of the parse output (class.json, the per-method json files and the class name map).
+ * Entries are parsed on first access and kept in a bounded LRU cache, so prompt construction
+ * does not re-read the same json files for every dependency lookup.
+ * The instance is shared by all runners through {@link zju.cst.aces.api.config.Config} and is thread-safe.
+ */
+public class ClassInfoRepository {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final String CLASS_INFO_FILE = "class.json";
+
+    private final Path parseOutput;
+    private final Path classNameMapPath;
+    private final Gson gson;
+    private final int capacity;
+    private final Map<String, ClassInfo> classInfos;
+    private final Map<Path, MethodInfo> methodInfos;
+    private volatile Map<String, List<String>> classNameMap;
+
+    public ClassInfoRepository(Path parseOutput, Path classNameMapPath, Gson gson, int capacity) {
+        this.parseOutput = parseOutput;
+        this.classNameMapPath = classNameMapPath;
+        this.gson = gson;
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.classInfos = Collections.synchronizedMap(new LruCache<String, ClassInfo>(this.capacity));
+        this.methodInfos = Collections.synchronizedMap(new LruCache<Path, MethodInfo>(this.capacity));
+    }
+
+    /**
+     * Load all class.json files in the parse output (up to the cache capacity).
+     * Called once after the preparation phase.
+     */
+    public void load() throws IOException {
+        clear();
+        if (parseOutput == null || !Files.exists(parseOutput)) {
+            return;
+        }
+        for (Path classInfoPath : listClassInfoFiles()) {
+            if (classInfos.size() >= capacity) {
+                break;
+            }
+            getClassInfo(getFullClassName(classInfoPath));
+        }
+    }
+
+    /**
+     * Get the simple name -> full class names index exported by the parser.
+     * The index is read once and kept as an immutable map until the parse output is reloaded.
+     */
+    public Map<String, List<String>> getClassNameMap() throws IOException {
+        Map<String, List<String>> map = classNameMap;
+        if (map == null) {
+            synchronized (this) {
+                if (classNameMap == null) {
+                    classNameMap = readClassNameMap();
+                }
+                map = classNameMap;
+            }
+        }
+        return map;
+    }
+
+    private Map<String, List<String>> readClassNameMap() throws IOException {
+        Map<String, List<String>> map = gson.fromJson(
+                new String(Files.readAllBytes(classNameMapPath), StandardCharsets.UTF_8),
+                new TypeToken<Map<String, List<String>>>() {}.getType());
+        Map<String, List<String>> index = new HashMap<>();
+        if (map != null) {
+            map.forEach((name, fullNames) -> index.put(name, Collections.unmodifiableList(new ArrayList<>(fullNames))));
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Get the parsed class info by full class name, null if the class is not in the parse output.
+     */
+    public ClassInfo getClassInfo(String fullClassName) throws IOException {
+        ClassInfo classInfo = classInfos.get(fullClassName);
+        if (classInfo != null) {
+            return classInfo;
+        }
+        Path classInfoPath = parseOutput.resolve(fullClassName.replace(".", File.separator)).resolve(CLASS_INFO_FILE);
+        if (!classInfoPath.toFile().exists()) {
+            return null;
+        }
+        classInfo = gson.fromJson(new String(Files.readAllBytes(classInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+        if (classInfo != null) {
+            classInfos.put(fullClassName, classInfo);
+        }
+        return classInfo;
+    }
+
+    /**
+     * Get the parsed method (constructor) info of the given class, null if it is not in the parse output.
+     */
+    public MethodInfo getMethodInfo(ClassInfo info, String mSig) throws IOException {
+        String packagePath = info.getPackageName()
+                .replace("package ", "")
+                .replace(".", File.separator)
+                .replace(";", "");
+        Path methodInfoPath = parseOutput
+                .resolve(packagePath)
+                .resolve(info.className)
+                .resolve(ClassParser.getFilePathBySig(mSig, info));
+        MethodInfo methodInfo = methodInfos.get(methodInfoPath);
+        if (methodInfo != null) {
+            return methodInfo;
+        }
+        if (!methodInfoPath.toFile().exists()) {
+            return null;
+        }
+        methodInfo = gson.fromJson(new String(Files.readAllBytes(methodInfoPath), StandardCharsets.UTF_8), MethodInfo.class);
+        if (methodInfo != null) {
+            methodInfos.put(methodInfoPath, methodInfo);
+        }
+        return methodInfo;
+    }
+
+    /**
+     * All class.json files in the parse output, in a stable order.
+     */
+    public List<Path> listClassInfoFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(parseOutput)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().equals(CLASS_INFO_FILE))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Map a class.json path back to the full class name it was exported for.
+     */
+    public String getFullClassName(Path classInfoPath) {
+        return parseOutput.relativize(classInfoPath.getParent()).toString().replace(File.separator, ".");
+    }
+
+    public void clear() {
+        classInfos.clear();
+        methodInfos.clear();
+        classNameMap = null;
+    }
+
+    public int size() {
+        return classInfos.size() + methodInfos.size();
+    }
+
+    private static class LruCache<K, V> extends LinkedHashMap<K, V> {
+        private final int maxEntries;
+
+        LruCache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
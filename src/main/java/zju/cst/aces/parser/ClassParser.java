@@ -13,7 +13,6 @@ import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.nodeTypes.NodeWithSimpleName;
 import com.github.javaparser.ast.stmt.ExpressionStmt;
 import com.github.javaparser.ast.stmt.ReturnStmt;
-import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
 import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
 import com.github.javaparser.resolution.types.ResolvedReferenceType;
@@ -40,9 +39,9 @@ import java.util.stream.Stream;
 
 public class ClassParser {
     private static final String separator = "_";
-    private static Path classOutputPath;
-    private static ClassInfo classInfo;
-    private static JavaParser parser;
+    private final Path classOutputPath;
+    private final JavaParser parser;
+    private ClassInfo classInfo;
     public int methodCount = 0;
     Project project;
     Logger logger;
@@ -149,7 +148,8 @@ public class ClassParser {
                 getGetterSetterSig(cu, classNode),
                 getGetterSetter(cu, classNode),
                 getConstructorDeps(cu, classNode),
-                getSubClasses(classNode)
+                // Filled from the TypeHierarchy once the whole project is parsed
+                new ArrayList<>()
         );
 
         ci.setPublic(classNode.isPublic());
@@ -315,42 +315,6 @@ public class ClassParser {
         return superClasses;
     }
 
-    public List<String> getSubClasses(ClassOrInterfaceDeclaration node) {
-        String targetClassName = node.getFullyQualifiedName()
-                .orElseThrow(() -> new NoSuchElementException("Fully qualified name not present"))
-                .toString();
-
-        List<String> subClasses = new ArrayList<>();
-        List<String> classPaths = ProjectParser.scanSourceDirectory(this.project);
-        if (classPaths.isEmpty()) {
-            return null;
-        }
-        try {
-            for (String classPath : classPaths) {
-                ParseResult<CompilationUnit> parseResult = parser.parse(new File(classPath));
-                CompilationUnit cu = parseResult.getResult()
-                        .orElseThrow(() -> new NoSuchElementException("Parsing result is empty"));
-                String packageName = cu.getPackageDeclaration().isPresent()? cu.getPackageDeclaration().get().getNameAsString() : "";
-                List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
-                for (ClassOrInterfaceDeclaration classDeclaration : classes) {
-                    for (ClassOrInterfaceType extendedType : classDeclaration.getExtendedTypes()) {
-                        if (targetClassName.equals(packageName + "." + extendedType.getNameAsString())) {
-                            subClasses.add(
-                                    classDeclaration.getFullyQualifiedName()
-                                            .orElseThrow(() -> new NoSuchElementException("Fully qualified name not present"))
-                                            .toString()
-                            );
-
-                        }
-                    }
-                }
-            }
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-        return subClasses;
-    }
-
     private List<String> getInterfaces(ClassOrInterfaceDeclaration node) {
         List<String> interfaces = new ArrayList<>();
         node.getImplementedTypes().forEach(sup -> {
@@ -0,0 +1,83 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
+
+import zju.cst.aces.util.JarIndex;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type solver over all dependency jars of the project, in classpath order.
+ * Unlike one {@link JarTypeSolver} per jar, nothing is read when it is created: types are found through a
+ * {@link JarIndex} from class name to the first jar containing it, and the {@link JarTypeSolver} of a jar
+ * is only created when a type of that jar is asked for.
+ */
+public class LazyJarTypeSolver implements TypeSolver {
+    private final JarIndex index;
+    private TypeSolver parent;
+    private final Map<String, Optional<JarTypeSolver>> solvers = new ConcurrentHashMap<>();
+
+    public LazyJarTypeSolver(List<String> jars, int threads) {
+        this.index = new JarIndex(jars, threads, LazyJarTypeSolver::typeName);
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        Objects.requireNonNull(parent);
+        if (this.parent != null) {
+            throw new IllegalStateException("This TypeSolver already has a parent.");
+        }
+        if (parent == this) {
+            throw new IllegalStateException("The parent of this TypeSolver cannot be itself.");
+        }
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        String jar = index.get(name);
+        if (jar == null) {
+            return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+        }
+        Optional<JarTypeSolver> solver = solvers.computeIfAbsent(jar, this::createSolver);
+        return solver.isPresent()
+                ? solver.get().tryToSolveType(name) : SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+    }
+
+    /**
+     * The JarTypeSolver answers from the root of this solver, so its declarations resolve their supertypes
+     * through the whole solver stack. Jars that cannot be read solve nothing.
+     */
+    private Optional<JarTypeSolver> createSolver(String jar) {
+        try {
+            JarTypeSolver solver = new JarTypeSolver(jar);
+            solver.setParent(this);
+            return Optional.of(solver);
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Class names with nested classes named as in the source, as {@link JarTypeSolver} does.
+     */
+    private static String typeName(String classFile) {
+        if (classFile.endsWith("module-info.class") || classFile.endsWith("package-info.class")) {
+            return null;
+        }
+        return classFile.substring(0, classFile.length() - ".class".length()).replace('/', '.').replace('$', '.');
+    }
+}
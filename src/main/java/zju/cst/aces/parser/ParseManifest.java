@@ -0,0 +1,109 @@
+package zju.cst.aces.parser;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per source file record of the last parse: content hash, timestamp and the classes (with their indices)
+ * that were extracted from it. Stored next to class-info and used to re-parse only changed files.
+ */
+public class ParseManifest {
+    public static final String MANIFEST_FILE = "parseManifest.json";
+
+    public int nextIndex;
+    public Map<String, FileEntry> files = new TreeMap<>();
+
+    public static class FileEntry {
+        public String hash;
+        public long lastModified;
+        public long size;
+        public List<String> classes = new ArrayList<>();
+        public List<Integer> indices = new ArrayList<>();
+    }
+
+    public static ParseManifest load(Path path, Gson gson) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ParseManifest manifest = gson.fromJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), ParseManifest.class);
+        if (manifest != null && manifest.files == null) {
+            manifest.files = new TreeMap<>();
+        }
+        return manifest;
+    }
+
+    public synchronized void save(Path path, Gson gson) throws IOException {
+        if (!Files.exists(path.getParent())) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, gson.toJson(this).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized void put(String classPath, FileEntry entry) {
+        files.put(classPath, entry);
+    }
+
+    public synchronized FileEntry remove(String classPath) {
+        return files.remove(classPath);
+    }
+
+    /**
+     * Whether the file is unchanged since the last parse. The hash is only computed when
+     * the timestamp or size differ, so touched-but-identical files are not re-parsed either.
+     */
+    public boolean isUnchanged(String classPath) throws IOException {
+        FileEntry entry = files.get(classPath);
+        if (entry == null) {
+            return false;
+        }
+        Path file = Paths.get(classPath);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+        if (entry.lastModified == lastModified && entry.size == size) {
+            return true;
+        }
+        if (entry.size == size && entry.hash.equals(hash(file))) {
+            entry.lastModified = lastModified;
+            return true;
+        }
+        return false;
+    }
+
+    public static FileEntry createEntry(Path file) throws IOException {
+        FileEntry entry = new FileEntry();
+        entry.lastModified = Files.getLastModifiedTime(file).toMillis();
+        entry.size = Files.size(file);
+        entry.hash = hash(file);
+        return entry;
+    }
+
+    public static String hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("In ParseManifest.hash: " + e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-confined JavaParser instances. A JavaParser reuses its generated parser between calls and is not
+ * thread-safe, so each thread gets its own instance per base configuration, created once and then reused.
+ * <p>
+ * The syntax-only parsers have no symbol resolver. They replace StaticJavaParser for the checks and rewrites
+ * of generated code that never resolve a type, and throw {@link ParseProblemException} the same way.
+ */
+public class ParserFactory {
+    private static final Map<ParserConfiguration, ThreadLocal<JavaParser>> PARSERS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<JavaParser> SYNTAX_PARSER =
+            ThreadLocal.withInitial(() -> new JavaParser(new ParserConfiguration()));
+
+    /**
+     * The parser of this thread with the language level and symbol resolver of the given configuration.
+     */
+    public static JavaParser forThread(ParserConfiguration base) {
+        return PARSERS.computeIfAbsent(base, configuration -> ThreadLocal.withInitial(() -> ProjectParser.newParser(configuration)))
+                .get();
+    }
+
+    /**
+     * The parser of this thread without symbol resolution.
+     */
+    public static JavaParser syntaxOnly() {
+        return SYNTAX_PARSER.get();
+    }
+
+    public static CompilationUnit parse(String code) {
+        return handleResult(syntaxOnly().parse(code));
+    }
+
+    public static MethodDeclaration parseMethodDeclaration(String code) {
+        return handleResult(syntaxOnly().parseMethodDeclaration(code));
+    }
+
+    public static ClassOrInterfaceType parseClassOrInterfaceType(String code) {
+        return handleResult(syntaxOnly().parseClassOrInterfaceType(code));
+    }
+
+    public static BodyDeclaration<?> parseBodyDeclaration(String code) {
+        return handleResult(syntaxOnly().parseBodyDeclaration(code));
+    }
+
+    private static <T extends Node> T handleResult(ParseResult<T> result) {
+        if (result.isSuccessful() && result.getResult().isPresent()) {
+            return result.getResult().get();
+        }
+        throw new ParseProblemException(result.getProblems());
+    }
+}
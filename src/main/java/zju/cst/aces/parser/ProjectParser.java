@@ -14,6 +14,7 @@ import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.resolution.UnsolvedSymbolException;
 import com.github.javaparser.resolution.types.ResolvedType;
+import com.google.gson.reflect.TypeToken;
 import lombok.var;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
 import slicing.graphs.CallGraph;
@@ -36,6 +37,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ProjectParser {
@@ -47,69 +53,291 @@ public class ProjectParser {
     public static Config config;
     public int classCount = 0;
     public int methodCount = 0;
+    private ParseManifest manifest;
+    private TypeHierarchy hierarchy;
 
     public ProjectParser(Config config) {
         this.srcFolderPath = Paths.get(config.getProject().getBasedir().getAbsolutePath(), "src", "main", "java");
         this.config = config;
         this.outputPath = config.getParseOutput();
-        this.parser = config.getParser();
+        this.parser = config.parser;
     }
 
     /**
      * Parse the project.
+     * Source files are parsed and extracted by a bounded pool of workers, each with its own thread-confined parser.
+     * Compilation units are dropped as soon as their class infos are exported.
+     * Class indices are assigned in file order, so the output does not depend on the number of workers.
+     * The type hierarchy is recorded in the same pass and fills the supertypes and subclasses of the class infos at the end.
      */
     public void parse() {
+        long startTime = System.currentTimeMillis();
         List<String> classPaths = scanSourceDirectory(config.getProject());
         if (classPaths.isEmpty()) {
             config.getLogger().warn("No java file found in " + srcFolderPath);
             return;
         }
-        NodeList<CompilationUnit> cus = new NodeList<>();
-        for (String classPath : classPaths) {
-            File file = new File(classPath);
-            try {
-                ParseResult<CompilationUnit> parseResult = parser.parse(file);
-                CompilationUnit cu = parseResult.getResult()
-                        .orElseThrow(() -> new NoSuchElementException("No result present in parseResult"));
+//      MethodExampleMap methodExampleMap = createMethodExampleMap(cus);
+
+        manifest = new ParseManifest();
+        hierarchy = new TypeHierarchy();
+        parseFiles(classPaths);
+        saveHierarchy(null, classPaths);
+
+        exportClassMapping();
+//      exportOCC();
+//      exportMethodExampleMap(methodExampleMap);
+        exportJson(config.getClassNameMapPath(), classNameMap);
+        saveManifest();
+        logSummary(startTime);
+    }
+
+    /**
+     * Re-parse only the source files that were added or changed since the last parse, and drop the
+     * class infos of deleted files. Falls back to a full parse when there is no manifest or type hierarchy.
+     * Class infos of unchanged files are only rewritten when their supertypes or subclasses changed.
+     */
+    public void update() {
+        long startTime = System.currentTimeMillis();
+        Path manifestPath = config.getTmpOutput().resolve(ParseManifest.MANIFEST_FILE);
+        TypeHierarchy previous;
+        try {
+            manifest = ParseManifest.load(manifestPath, config.getGSON());
+            previous = TypeHierarchy.load(config.getTmpOutput().resolve(TypeHierarchy.HIERARCHY_FILE), config.getGSON());
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.update: " + e);
+        }
+        if (manifest == null || previous == null) {
+            parse();
+            return;
+        }
 
-                cus.add(cu);
-            } catch (Exception e) {
-                throw new RuntimeException("In ProjectParser.parse: " + e);
+        List<String> classPaths = scanSourceDirectory(config.getProject());
+        Set<String> current = new HashSet<>(classPaths);
+        List<String> dirty = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        try {
+            for (String classPath : classPaths) {
+                if (!manifest.isUnchanged(classPath)) {
+                    dirty.add(classPath);
+                }
             }
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.update: " + e);
         }
-//      MethodExampleMap methodExampleMap = createMethodExampleMap(cus);
+        for (String classPath : manifest.files.keySet()) {
+            if (!current.contains(classPath)) {
+                removed.add(classPath);
+            }
+        }
+        if (dirty.isEmpty() && removed.isEmpty()) {
+            config.getLogger().info("No source file changed since the last parse, skip parsing!");
+            return;
+        }
+        config.getLogger().info("Re-parsing " + dirty.size() + " changed file(s), removing " + removed.size() + " deleted file(s) ...");
 
-        for (var cu : cus) {
-            try {
-                Path output = outputPath;
-                String packageName = "";
-                if (cu.getPackageDeclaration().isPresent()) {
-                    packageName = cu.getPackageDeclaration().get().getNameAsString();
-                    output = outputPath.resolve(packageName.replace(".", File.separator));
+        loadPreviousOutput();
+        hierarchy = new TypeHierarchy(previous);
+        for (String classPath : removed) {
+            dropEntry(manifest.remove(classPath));
+            hierarchy.remove(classPath);
+        }
+        for (String classPath : dirty) {
+            dropEntry(manifest.remove(classPath));
+            hierarchy.remove(classPath);
+        }
+        config.sharedInteger.set(manifest.nextIndex);
+        parseFiles(dirty);
+        saveHierarchy(previous, dirty);
+
+        writeJson(config.tmpOutput.resolve("classMapping.json"), config.classMapping);
+        writeJson(config.getClassNameMapPath(), classNameMap);
+        saveManifest();
+        logSummary(startTime);
+    }
+
+    private void parseFiles(List<String> classPaths) {
+        if (classPaths.isEmpty()) {
+            return;
+        }
+        int threads = Math.max(1, Math.min(config.getParseThreads(), classPaths.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ParserConfiguration parserConfiguration = parser.getParserConfiguration();
+
+        // The first class index of each file is the last index of the previous file
+        CompletableFuture<Integer> previous = CompletableFuture.completedFuture(config.sharedInteger.get());
+        List<Future<?>> futures = new ArrayList<>();
+        for (String classPath : classPaths) {
+            CompletableFuture<Integer> firstIndex = previous;
+            CompletableFuture<Integer> nextIndex = new CompletableFuture<>();
+            futures.add(executor.submit(() -> {
+                parseAndExtract(classPath, ParserFactory.forThread(parserConfiguration), firstIndex, nextIndex);
+                return null;
+            }));
+            previous = nextIndex;
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            config.sharedInteger.set(previous.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In ProjectParser.parse: " + e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("In ProjectParser.parse: " + e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Load the class mapping and class name map of the previous parse, so that they can be patched.
+     */
+    private void loadPreviousOutput() {
+        try {
+            Path mappingPath = config.tmpOutput.resolve("classMapping.json");
+            if (Files.exists(mappingPath)) {
+                Map<String, Map<String, String>> mapping = config.getGSON().fromJson(
+                        new String(Files.readAllBytes(mappingPath), StandardCharsets.UTF_8),
+                        new TypeToken<Map<String, Map<String, String>>>() {}.getType());
+                if (mapping != null) {
+                    config.classMapping.putAll(mapping);
                 }
-                ClassParser classParser = new ClassParser(parser, config.getProject(), output,
-                        config.getLogger(),  config.getGSON(), config.sharedInteger, config.classMapping, config.ocm);
-                int classNum = classParser.extractClass(cu);
+            }
+            if (Files.exists(config.getClassNameMapPath())) {
+                Map<String, Set<String>> names = config.getGSON().fromJson(
+                        new String(Files.readAllBytes(config.getClassNameMapPath()), StandardCharsets.UTF_8),
+                        new TypeToken<Map<String, Set<String>>>() {}.getType());
+                if (names != null) {
+                    names.forEach((name, fullNames) -> classNameMap.put(name, new HashSet<>(fullNames)));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.loadPreviousOutput: " + e);
+        }
+    }
 
-                if (classNum == 0) {
-                    continue;
+    /**
+     * Remove everything the previous parse exported for one source file.
+     */
+    private void dropEntry(ParseManifest.FileEntry entry) {
+        if (entry == null) {
+            return;
+        }
+        for (String fullClassName : entry.classes) {
+            File classDir = outputPath.resolve(fullClassName.replace(".", File.separator)).toFile();
+            File[] jsonFiles = classDir.listFiles((dir, name) -> name.endsWith(".json"));
+            if (jsonFiles != null) {
+                for (File jsonFile : jsonFiles) {
+                    jsonFile.delete();
+                }
+            }
+            String className = fullClassName.substring(fullClassName.lastIndexOf('.') + 1);
+            Set<String> fullNames = classNameMap.get(className);
+            if (fullNames != null) {
+                fullNames.remove(fullClassName);
+                if (fullNames.isEmpty()) {
+                    classNameMap.remove(className);
                 }
-                addClassMap(cu);
-                classCount += classNum;
-                methodCount += classParser.methodCount;
-            } catch (Exception e) {
-                throw new RuntimeException("In ProjectParser.parse: " + e);
             }
         }
-        exportClassMapping();
-//      exportOCC();
-//      exportMethodExampleMap(methodExampleMap);
-        exportJson(config.getClassNameMapPath(), classNameMap);
-        config.getLogger().info("\nParsed classes: " + classCount + "\nParsed methods: " + methodCount);
+        for (Integer index : entry.indices) {
+            config.classMapping.remove("class" + index);
+        }
+    }
+
+    /**
+     * Fill the class infos from the type hierarchy once all files are recorded, and save it.
+     */
+    private void saveHierarchy(TypeHierarchy previous, List<String> parsedFiles) {
+        try {
+            hierarchy.fillClassInfos(outputPath, config.getGSON(), previous, parsedFiles);
+            hierarchy.save(config.getTmpOutput().resolve(TypeHierarchy.HIERARCHY_FILE), config.getGSON());
+        } catch (IOException e) {
+            throw new RuntimeException("In ProjectParser.saveHierarchy: " + e);
+        }
+    }
+
+    private void logSummary(long startTime) {
+        config.getLogger().info("\nParsed classes: " + classCount + "\nParsed methods: " + methodCount
+                + "\nParse time: " + (System.currentTimeMillis() - startTime) + "ms"
+                + (config.getTypeSolver() == null ? "" : "\nType solver: " + config.getTypeSolver()));
+    }
+
+    private void saveManifest() {
+        manifest.nextIndex = config.sharedInteger.get();
+        try {
+            manifest.save(config.getTmpOutput().resolve(ParseManifest.MANIFEST_FILE), config.getGSON());
+        } catch (IOException e) {
+            config.getLogger().warn("Failed to save the parse manifest: " + e);
+        }
+    }
+
+    /**
+     * Parse one source file, export the class infos it declares and release the compilation unit.
+     * Waits until the previous file has reserved its class indices, which only requires it to be parsed.
+     */
+    private void parseAndExtract(String classPath, JavaParser javaParser,
+                                 CompletableFuture<Integer> firstIndex, CompletableFuture<Integer> nextIndex) throws Exception {
+        CompilationUnit cu;
+        try {
+            ParseResult<CompilationUnit> parseResult = javaParser.parse(new File(classPath));
+            cu = parseResult.getResult()
+                    .orElseThrow(() -> new NoSuchElementException("No result present in parseResult"));
+        } catch (Exception e) {
+            nextIndex.complete(firstIndex.get());
+            throw e;
+        }
+        int index = firstIndex.get();
+        List<ClassOrInterfaceDeclaration> classes = cu.findAll(ClassOrInterfaceDeclaration.class);
+        nextIndex.complete(index + classes.size());
+        recordEntry(classPath, cu, classes, index);
+        hierarchy.add(classPath, cu);
+
+        Path output = outputPath;
+        if (cu.getPackageDeclaration().isPresent()) {
+            String packageName = cu.getPackageDeclaration().get().getNameAsString();
+            output = outputPath.resolve(packageName.replace(".", File.separator));
+        }
+        ClassParser classParser = new ClassParser(javaParser, config.getProject(), output,
+                config.getLogger(), config.getGSON(), new AtomicInteger(index), config.classMapping, config.ocm);
+        int classNum = classParser.extractClass(cu);
+        if (classNum == 0) {
+            return;
+        }
+        addClassMap(cu);
+        synchronized (this) {
+            classCount += classNum;
+            methodCount += classParser.methodCount;
+        }
+    }
+
+    private void recordEntry(String classPath, CompilationUnit cu, List<ClassOrInterfaceDeclaration> classes, int index) throws IOException {
+        ParseManifest.FileEntry entry = ParseManifest.createEntry(Paths.get(classPath));
+        String packagePrefix = cu.getPackageDeclaration().map(p -> p.getNameAsString() + ".").orElse("");
+        for (int i = 0; i < classes.size(); i++) {
+            entry.classes.add(packagePrefix + classes.get(i).getNameAsString());
+            entry.indices.add(index + i);
+        }
+        manifest.put(classPath, entry);
+    }
+
+    /**
+     * Create a parser with the same language level and symbol resolver as the given configuration.
+     * JavaParser instances are not thread-safe, so every worker thread gets its own.
+     */
+    public static JavaParser newParser(ParserConfiguration base) {
+        ParserConfiguration configuration = new ParserConfiguration();
+        configuration.setLanguageLevel(base.getLanguageLevel());
+        base.getSymbolResolver().ifPresent(configuration::setSymbolResolver);
+        return new JavaParser(configuration);
     }
 
     private SDG createSDG(NodeList<CompilationUnit> cus) {
         SDG sdg = new JSysDG();
+        // Summary arcs of independent call graph components are computed on the worker pool
+        sdg.setSummaryExecutor(config.getScheduler().getExecutor());
         sdg.build(cus);
         return sdg;
     }
@@ -270,7 +498,7 @@ public class ProjectParser {
         return callerList;
     }
 
-    public void addClassMap(CompilationUnit cu) {
+    public synchronized void addClassMap(CompilationUnit cu) {
         cu.findAll(ClassOrInterfaceDeclaration.class).forEach(classNode -> {
             String className = classNode.getNameAsString();
             String fullClassName = cu.getPackageDeclaration().isPresent() ?
@@ -289,6 +517,10 @@ public class ProjectParser {
         if(Files.exists(path)){
             return;
         }
+        writeJson(path, obj);
+    }
+
+    public static void writeJson(Path path, Object obj) {
         if (!Files.exists(path.getParent())) {
             try {
                 Files.createDirectories(path.getParent());
@@ -299,7 +531,7 @@ public class ProjectParser {
         try (OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(path.toFile()), StandardCharsets.UTF_8)){
             writer.write(config.getGSON().toJson(obj));
         } catch (Exception e) {
-            throw new RuntimeException("In ProjectParser.exportJson: " + e);
+            throw new RuntimeException("In ProjectParser.writeJson: " + e);
         }
     }
 
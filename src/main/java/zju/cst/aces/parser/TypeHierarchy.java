@@ -0,0 +1,454 @@
+package zju.cst.aces.parser;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.google.gson.Gson;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ClassInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type hierarchy of the classes and interfaces declared in the project: the direct superclass and interfaces
+ * of every type, its direct subtypes, and the transitive closures of both.
+ * It is filled in the same pass in which {@link ProjectParser} parses the sources, instead of re-parsing the
+ * project for every class. Types get dense int ids and the edges are int arrays, so closures are BitSet walks.
+ * Supertypes declared outside the project get ids as well, under the name they are written with.
+ * <p>
+ * The declarations are kept per source file and saved to tmpOutput/typeHierarchy.json, so that an incremental
+ * parse only replaces the changed files. The index is rebuilt from them when first queried.
+ */
+public class TypeHierarchy {
+    public static final String HIERARCHY_FILE = "typeHierarchy.json";
+    private static final Map<Path, TypeHierarchy> HIERARCHIES = new ConcurrentHashMap<>();
+
+    private Map<String, List<Declaration>> files = new TreeMap<>();
+    private transient volatile Index index;
+
+    public static class Declaration {
+        public String fullClassName;
+        public String packageName;
+        public String className;
+        public boolean isInterface;
+        public List<String> imports = new ArrayList<>();
+        public List<String> extendedTypes = new ArrayList<>();
+        public List<String> implementedTypes = new ArrayList<>();
+    }
+
+    private static class Index {
+        final List<String> names = new ArrayList<>();
+        final Map<String, Integer> ids = new HashMap<>();
+        // Per project type, -1 when the superclass is not declared
+        int[] superClass;
+        // Per project type, the interfaces a class implements or an interface extends
+        int[][] interfaces;
+        // Per type, including the external ones
+        int[][] subTypes;
+    }
+
+    public TypeHierarchy() {
+    }
+
+    public TypeHierarchy(TypeHierarchy other) {
+        this.files.putAll(other.files);
+    }
+
+    /**
+     * Get the type hierarchy saved by the last parse of the project, empty if there is none.
+     */
+    public static TypeHierarchy forConfig(Config config) {
+        Path path = config.getTmpOutput().resolve(HIERARCHY_FILE);
+        return HIERARCHIES.computeIfAbsent(path, key -> {
+            try {
+                TypeHierarchy hierarchy = load(key, config.getGSON());
+                return hierarchy == null ? new TypeHierarchy() : hierarchy;
+            } catch (IOException e) {
+                throw new RuntimeException("In TypeHierarchy.forConfig: " + e);
+            }
+        });
+    }
+
+    public static TypeHierarchy load(Path path, Gson gson) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        TypeHierarchy hierarchy = gson.fromJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), TypeHierarchy.class);
+        if (hierarchy != null && hierarchy.files == null) {
+            hierarchy.files = new TreeMap<>();
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Save the hierarchy, which from now on is the one returned by {@link #forConfig}.
+     */
+    public synchronized void save(Path path, Gson gson) throws IOException {
+        if (!Files.exists(path.getParent())) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, gson.toJson(this).getBytes(StandardCharsets.UTF_8));
+        HIERARCHIES.put(path, this);
+    }
+
+    /**
+     * Record the types declared in one source file, replacing what was recorded for it before.
+     */
+    public void add(String classPath, CompilationUnit cu) {
+        String packageName = cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+        List<String> imports = new ArrayList<>();
+        for (ImportDeclaration importDeclaration : cu.getImports()) {
+            if (!importDeclaration.isStatic()) {
+                imports.add(importDeclaration.getNameAsString() + (importDeclaration.isAsterisk() ? ".*" : ""));
+            }
+        }
+        List<Declaration> declarations = new ArrayList<>();
+        for (ClassOrInterfaceDeclaration classNode : cu.findAll(ClassOrInterfaceDeclaration.class)) {
+            Declaration declaration = new Declaration();
+            declaration.packageName = packageName;
+            declaration.className = classNode.getNameAsString();
+            declaration.fullClassName = classNode.getFullyQualifiedName()
+                    .orElse(packageName.isEmpty() ? declaration.className : packageName + "." + declaration.className);
+            declaration.isInterface = classNode.isInterface();
+            declaration.imports = imports;
+            for (ClassOrInterfaceType type : classNode.getExtendedTypes()) {
+                declaration.extendedTypes.add(type.getNameWithScope());
+            }
+            for (ClassOrInterfaceType type : classNode.getImplementedTypes()) {
+                declaration.implementedTypes.add(type.getNameWithScope());
+            }
+            declarations.add(declaration);
+        }
+        synchronized (this) {
+            files.put(classPath, declarations);
+            index = null;
+        }
+    }
+
+    public synchronized void remove(String classPath) {
+        files.remove(classPath);
+        index = null;
+    }
+
+    /**
+     * The id of the type, -1 if it is neither declared in the project nor a supertype of a project type.
+     */
+    public int getId(String fullClassName) {
+        Integer id = getIndex().ids.get(fullClassName);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int id) {
+        return getIndex().names.get(id);
+    }
+
+    public int size() {
+        return getIndex().names.size();
+    }
+
+    /**
+     * Whether the type is declared in the project, and so its own supertypes are known.
+     */
+    public boolean isProjectType(int id) {
+        return id >= 0 && id < getIndex().superClass.length;
+    }
+
+    /**
+     * The id of the direct superclass, -1 for interfaces, external types and classes without extends clause.
+     */
+    public int getSuperClass(int id) {
+        return isProjectType(id) ? getIndex().superClass[id] : -1;
+    }
+
+    /**
+     * The ids of the interfaces a class implements, or an interface extends.
+     */
+    public int[] getInterfaces(int id) {
+        return isProjectType(id) ? getIndex().interfaces[id].clone() : new int[0];
+    }
+
+    public int[] getSubTypes(int id) {
+        return id < 0 ? new int[0] : getIndex().subTypes[id].clone();
+    }
+
+    /**
+     * Ids of all types the type extends or implements, directly or not, without the type itself.
+     */
+    public BitSet getAllSuperTypes(int id) {
+        Index idx = getIndex();
+        BitSet result = new BitSet(idx.names.size());
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            if (current < 0 || current >= idx.superClass.length) {
+                continue;
+            }
+            int superClass = idx.superClass[current];
+            if (superClass >= 0 && !result.get(superClass)) {
+                result.set(superClass);
+                stack.push(superClass);
+            }
+            for (int type : idx.interfaces[current]) {
+                if (!result.get(type)) {
+                    result.set(type);
+                    stack.push(type);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ids of all project types that extend or implement the type, directly or not, without the type itself.
+     */
+    public BitSet getAllSubTypes(int id) {
+        Index idx = getIndex();
+        BitSet result = new BitSet(idx.names.size());
+        if (id < 0) {
+            return result;
+        }
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            for (int type : idx.subTypes[stack.pop()]) {
+                if (!result.get(type)) {
+                    result.set(type);
+                    stack.push(type);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Full names of the types that directly extend or implement the type.
+     */
+    public List<String> getSubTypes(String fullClassName) {
+        return getNames(getSubTypes(getId(fullClassName)));
+    }
+
+    public List<String> getAllSuperTypes(String fullClassName) {
+        int id = getId(fullClassName);
+        return id < 0 ? new ArrayList<>() : getNames(getAllSuperTypes(id));
+    }
+
+    public List<String> getAllSubTypes(String fullClassName) {
+        return getNames(getAllSubTypes(getId(fullClassName)));
+    }
+
+    /**
+     * Whether the first type extends or implements the second one, directly or not.
+     */
+    public boolean isSubType(String subType, String superType) {
+        int sub = getId(subType);
+        int sup = getId(superType);
+        return sub >= 0 && sup >= 0 && getAllSuperTypes(sub).get(sup);
+    }
+
+    /**
+     * Fill the superClasses, implementedTypes and subClasses of the exported class infos from the hierarchy.
+     * {@link ClassParser} writes the declared names and no subclasses, so only class infos whose lists differ
+     * from those, or from the previous hierarchy for files that were not parsed again, are rewritten.
+     */
+    public void fillClassInfos(Path parseOutput, Gson gson, TypeHierarchy previous, Collection<String> parsedFiles) throws IOException {
+        Set<String> parsed = new HashSet<>(parsedFiles);
+        Map<String, List<Declaration>> snapshot;
+        synchronized (this) {
+            snapshot = new TreeMap<>(files);
+        }
+        for (Map.Entry<String, List<Declaration>> entry : snapshot.entrySet()) {
+            boolean fresh = previous == null || parsed.contains(entry.getKey());
+            for (Declaration declaration : entry.getValue()) {
+                List<String> superClasses = resolveAll(declaration, declaration.extendedTypes);
+                List<String> implementedTypes = resolveAll(declaration, declaration.implementedTypes);
+                List<String> subClasses = getSubTypes(declaration.fullClassName);
+                boolean changed = fresh
+                        ? !superClasses.equals(simpleNames(declaration.extendedTypes))
+                        || !implementedTypes.equals(simpleNames(declaration.implementedTypes))
+                        || !subClasses.isEmpty()
+                        : !superClasses.equals(previous.resolveAll(declaration, declaration.extendedTypes))
+                        || !implementedTypes.equals(previous.resolveAll(declaration, declaration.implementedTypes))
+                        || !subClasses.equals(previous.getSubTypes(declaration.fullClassName));
+                if (changed) {
+                    updateClassInfo(parseOutput, gson, declaration, superClasses, implementedTypes, subClasses);
+                }
+            }
+        }
+    }
+
+    private static void updateClassInfo(Path parseOutput, Gson gson, Declaration declaration, List<String> superClasses,
+                                        List<String> implementedTypes, List<String> subClasses) throws IOException {
+        Path classInfoPath = parseOutput.resolve(declaration.packageName.replace(".", File.separator))
+                .resolve(declaration.className).resolve(ClassInfoRepository.CLASS_INFO_FILE);
+        if (!Files.exists(classInfoPath)) {
+            return;
+        }
+        ClassInfo classInfo = gson.fromJson(new String(Files.readAllBytes(classInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+        if (classInfo == null || !declaration.className.equals(classInfo.getClassName())) {
+            return;
+        }
+        classInfo.setSuperClasses(superClasses);
+        classInfo.setImplementedTypes(implementedTypes);
+        classInfo.setSubClasses(subClasses);
+        Files.write(classInfoPath, gson.toJson(classInfo).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<String> resolveAll(Declaration declaration, List<String> types) {
+        Index idx = getIndex();
+        List<String> result = new ArrayList<>();
+        for (String type : types) {
+            result.add(resolve(declaration, type, idx.ids));
+        }
+        return result;
+    }
+
+    private static List<String> simpleNames(List<String> types) {
+        List<String> result = new ArrayList<>();
+        for (String type : types) {
+            result.add(type.substring(type.lastIndexOf('.') + 1));
+        }
+        return result;
+    }
+
+    private List<String> getNames(int[] ids) {
+        Index idx = getIndex();
+        List<String> result = new ArrayList<>();
+        for (int id : ids) {
+            result.add(idx.names.get(id));
+        }
+        return result;
+    }
+
+    private List<String> getNames(BitSet ids) {
+        Index idx = getIndex();
+        List<String> result = new ArrayList<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(idx.names.get(id));
+        }
+        return result;
+    }
+
+    private Index getIndex() {
+        Index result = index;
+        if (result == null) {
+            synchronized (this) {
+                if (index == null) {
+                    index = buildIndex();
+                }
+                result = index;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Project types take the first ids, in file order, then the external supertypes as they are met.
+     * A type declared twice keeps its first declaration, as on the classpath.
+     */
+    private Index buildIndex() {
+        Index idx = new Index();
+        List<Declaration> declarations = new ArrayList<>();
+        for (List<Declaration> fileDeclarations : files.values()) {
+            for (Declaration declaration : fileDeclarations) {
+                if (!idx.ids.containsKey(declaration.fullClassName)) {
+                    idx.ids.put(declaration.fullClassName, idx.names.size());
+                    idx.names.add(declaration.fullClassName);
+                    declarations.add(declaration);
+                }
+            }
+        }
+        int projectTypes = declarations.size();
+        idx.superClass = new int[projectTypes];
+        idx.interfaces = new int[projectTypes][];
+        for (int id = 0; id < projectTypes; id++) {
+            Declaration declaration = declarations.get(id);
+            List<String> interfaces = declaration.isInterface ? declaration.extendedTypes : declaration.implementedTypes;
+            idx.superClass[id] = declaration.isInterface || declaration.extendedTypes.isEmpty()
+                    ? -1 : idOf(idx, resolve(declaration, declaration.extendedTypes.get(0), idx.ids));
+            idx.interfaces[id] = new int[interfaces.size()];
+            for (int i = 0; i < interfaces.size(); i++) {
+                idx.interfaces[id][i] = idOf(idx, resolve(declaration, interfaces.get(i), idx.ids));
+            }
+        }
+
+        // Inverse edges, counted first so that every type gets an exactly sized array
+        int[] counts = new int[idx.names.size()];
+        for (int id = 0; id < projectTypes; id++) {
+            if (idx.superClass[id] >= 0) {
+                counts[idx.superClass[id]]++;
+            }
+            for (int type : idx.interfaces[id]) {
+                counts[type]++;
+            }
+        }
+        idx.subTypes = new int[idx.names.size()][];
+        for (int id = 0; id < counts.length; id++) {
+            idx.subTypes[id] = new int[counts[id]];
+            counts[id] = 0;
+        }
+        for (int id = 0; id < projectTypes; id++) {
+            if (idx.superClass[id] >= 0) {
+                idx.subTypes[idx.superClass[id]][counts[idx.superClass[id]]++] = id;
+            }
+            for (int type : idx.interfaces[id]) {
+                idx.subTypes[type][counts[type]++] = id;
+            }
+        }
+        return idx;
+    }
+
+    private static int idOf(Index idx, String name) {
+        Integer id = idx.ids.get(name);
+        if (id == null) {
+            id = idx.names.size();
+            idx.ids.put(name, id);
+            idx.names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Resolve a type name as written in a declaration to the full name of a project type, looking in the
+     * enclosing types, the single-type imports, the package and the on-demand imports, in the order of the JLS.
+     * Types that are not declared in the project keep the name they are written with, or the imported name.
+     */
+    private static String resolve(Declaration declaration, String type, Map<String, Integer> projectTypes) {
+        String head = type.contains(".") ? type.substring(0, type.indexOf('.')) : type;
+        String tail = type.substring(head.length());
+        // Members of the declaring type and of its enclosing types
+        String outer = declaration.fullClassName;
+        int packageLength = declaration.packageName.length();
+        while (outer.length() > packageLength && outer.contains(".")) {
+            if (projectTypes.containsKey(outer + "." + type)) {
+                return outer + "." + type;
+            }
+            outer = outer.substring(0, outer.lastIndexOf('.'));
+        }
+        for (String imported : declaration.imports) {
+            if (imported.endsWith("." + head)) {
+                return imported + tail;
+            }
+        }
+        String samePackage = declaration.packageName.isEmpty() ? type : declaration.packageName + "." + type;
+        if (projectTypes.containsKey(samePackage)) {
+            return samePackage;
+        }
+        for (String imported : declaration.imports) {
+            if (imported.endsWith(".*")) {
+                String candidate = imported.substring(0, imported.length() - 1) + type;
+                if (projectTypes.containsKey(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        return type;
+    }
+}
@@ -208,16 +208,17 @@ public class PromptGenerator {
         return "";
     }
     public void processRepair(PromptInfo promptInfo){
-        int promptTokens = TokenCounter.countToken(promptInfo.getUnitTest())
-                + TokenCounter.countToken(promptInfo.getMethodSignature())
-                + TokenCounter.countToken(promptInfo.getClassName())
-                + TokenCounter.countToken(promptInfo.getContext())
-                + TokenCounter.countToken(promptInfo.getOtherMethodBrief());
+        String modelName = config.getModel().getModelName();
+        int promptTokens = TokenCounter.countToken(promptInfo.getUnitTest(), modelName)
+                + TokenCounter.countToken(promptInfo.getMethodSignature(), modelName)
+                + TokenCounter.countToken(promptInfo.getClassName(), modelName)
+                + TokenCounter.countToken(promptInfo.getContext(), modelName)
+                + TokenCounter.countToken(promptInfo.getOtherMethodBrief(), modelName);
         int allowedTokens = Math.max(config.getMaxPromptTokens() - promptTokens, config.getMinErrorTokens());
         TestMessage errorMsg = promptInfo.getErrorMsg();
         String processedErrorMsg = "";
         for (String error : errorMsg.getErrorMessage()) {
-            if (TokenCounter.countToken(processedErrorMsg + error + "\n") <= allowedTokens) {
+            if (TokenCounter.countToken(processedErrorMsg + error + "\n", modelName) <= allowedTokens) {
                 processedErrorMsg += error + "\n";
             }
         }
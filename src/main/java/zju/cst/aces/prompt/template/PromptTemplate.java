@@ -8,11 +8,11 @@ import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import lombok.Data;
-import zju.cst.aces.api.Task;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.*;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.runner.AbstractRunner;
+import zju.cst.aces.util.TokenCounter;
 import zju.cst.aces.util.testpilot.JavadocCodeExampleCheck;
 import zju.cst.aces.util.testpilot.SnippetAnalyzer;
 
@@ -100,7 +100,7 @@ public class PromptTemplate {
                 }
                 matches.remove(matches.size()-1);
             }
-        } while (AbstractRunner.isExceedMaxTokens(this.maxPromptTokens, generatedText) && matches.size()>0);
+        } while (AbstractRunner.isExceedMaxTokens(this.maxPromptTokens, config.getModel().getModelName(), generatedText) && matches.size()>0);
         return generatedText;
     }
 
@@ -182,6 +182,8 @@ public class PromptTemplate {
             this.dataModel.put("step_desp", "");
             this.dataModel.put("step_code", "");
         }
+        //add mutap
+        this.dataModel.put("surviving_mutants", promptInfo.getSurvivingMutants());
         //add target method invocation example in the project
         Map<String, List<String>> invocationCodeMap = get_method_invocation_code(Paths.get(config.tmpOutput.toString(),
                 "methodExampleCode.json").toString(), promptInfo.getFullClassName(), promptInfo.getMethodSignature());
@@ -276,14 +278,9 @@ public class PromptTemplate {
         Map<String, String> depBrief = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : methodInfo.dependentMethods.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depBrief;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depBrief;
             }
             String info = "";
             for (String depMethodSig : entry.getValue()) {
@@ -328,15 +325,14 @@ public class PromptTemplate {
      * if token of testspark exceed
      */
     public boolean isTokenExceed(String full_method_info,Map<String,String> dep_class_sigs,Map<String,String> dep_m_sigs_ano_com ){
-        String prompt=full_method_info;
+        TokenCounter.Budget budget = TokenCounter.newBudget(config.maxPromptTokens, config.getModel().getModelName());
+        budget.add(full_method_info);
         for (String dep_class_sig : dep_class_sigs.keySet()) {
-            prompt+=dep_class_sig;
-            prompt+=dep_m_sigs_ano_com.get(dep_class_sig);
-        }
-        if(AbstractRunner.isExceedMaxTokens(config.maxPromptTokens,prompt)){
-            return true;
+            if (!budget.add(dep_class_sig) || !budget.add(dep_m_sigs_ano_com.get(dep_class_sig))) {
+                return true;
+            }
         }
-        return false;
+        return budget.isExceeded();
     }
 
     public Map<String, String> getDepBriefWithAno(ClassInfo classInfo, MethodInfo methodInfo) throws IOException {
@@ -366,14 +362,9 @@ public class PromptTemplate {
         Map<String, String> depBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : methodInfo.dependentMethods.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depBodies;
             }
             String info = "";
             for (String depMethodSig : entry.getValue()) {
@@ -392,14 +383,9 @@ public class PromptTemplate {
         Map<String, String> depFields = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depFields;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depFields;
             }
             depFields.put(depClassName, AbstractRunner.joinLines(depClassInfo.fields));
         }
@@ -409,14 +395,9 @@ public class PromptTemplate {
             if (depFields.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depFields;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depFields;
             }
             depFields.put(depClassName, AbstractRunner.joinLines(depClassInfo.fields));
         }
@@ -427,14 +408,9 @@ public class PromptTemplate {
         Map<String, String> depConstructorSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorSigs;
             }
             depConstructorSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.constructorBrief));
         }
@@ -444,14 +420,9 @@ public class PromptTemplate {
             if (depConstructorSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorSigs;
             }
             depConstructorSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.constructorBrief));
         }
@@ -462,14 +433,9 @@ public class PromptTemplate {
         Map<String, String> depConstructorBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorBodies;
             }
 
             String info = "";
@@ -488,14 +454,9 @@ public class PromptTemplate {
             if (depConstructorBodies.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depConstructorBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depConstructorBodies;
             }
 
             String info = "";
@@ -515,14 +476,9 @@ public class PromptTemplate {
         Map<String, String> depClassSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-//                return depClassSigs;
-                continue;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
+//                return depClassSigs;
                 continue;
             }
             depClassSigs.put(depClassName, depClassInfo.classSignature);
@@ -533,14 +489,9 @@ public class PromptTemplate {
             if (depClassSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-//                return depClassSigs;
-                continue;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
+//                return depClassSigs;
                 continue;
             }
             depClassSigs.put(depClassName, depClassInfo.classSignature);
@@ -552,14 +503,9 @@ public class PromptTemplate {
         Map<String, ClassInfo> depClassSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depClassSigs;
             }
             depClassSigs.put(depClassName, depClassInfo);
         }
@@ -569,12 +515,7 @@ public class PromptTemplate {
             if (depClassSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                continue;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
                 continue;
             }
@@ -587,14 +528,9 @@ public class PromptTemplate {
         Map<String, String> depClassBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depClassBodies;
             }
             depClassBodies.put(depClassName, depClassInfo.classDeclarationCode);
         }
@@ -604,14 +540,9 @@ public class PromptTemplate {
             if (depClassBodies.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depClassBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depClassBodies;
             }
             depClassBodies.put(depClassName, depClassInfo.classDeclarationCode);
         }
@@ -622,14 +553,9 @@ public class PromptTemplate {
         Map<String, String> depPackages = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depPackages;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depPackages;
             }
             depPackages.put(depClassName, depClassInfo.packageName);
         }
@@ -639,14 +565,9 @@ public class PromptTemplate {
             if (depPackages.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depPackages;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depPackages;
             }
             depPackages.put(depClassName, depClassInfo.packageName);
         }
@@ -657,14 +578,9 @@ public class PromptTemplate {
         Map<String, String> depImports = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depImports;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depImports;
             }
             depImports.put(depClassName, AbstractRunner.joinLines(depClassInfo.imports));
         }
@@ -674,14 +590,9 @@ public class PromptTemplate {
             if (depImports.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depImports;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depImports;
             }
             depImports.put(depClassName, AbstractRunner.joinLines(depClassInfo.imports));
         }
@@ -692,14 +603,9 @@ public class PromptTemplate {
         Map<String, String> depGSSigs = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSSigs;
             }
             depGSSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.getterSetterSigs));
         }
@@ -709,14 +615,9 @@ public class PromptTemplate {
             if (depGSSigs.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSSigs;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSSigs;
             }
             depGSSigs.put(depClassName, AbstractRunner.joinLines(depClassInfo.getterSetterSigs));
         }
@@ -727,14 +628,9 @@ public class PromptTemplate {
         Map<String, String> depGSBodies = new HashMap<>();
         for (Map.Entry<String, Set<String>> entry : classInfo.constructorDeps.entrySet()) {
             String depClassName = entry.getKey();
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSBodies;
             }
 
             String info = "";
@@ -753,14 +649,9 @@ public class PromptTemplate {
             if (depGSBodies.containsKey(depClassName)) {
                 continue;
             }
-            String fullDepClassName = Task.getFullClassName(config, depClassName);
-            Path depClassInfoPath = config.getParseOutput().resolve(fullDepClassName.replace(".", File.separator)).resolve("class.json");
-            if (!depClassInfoPath.toFile().exists()) {
-                return depGSBodies;
-            }
-            ClassInfo depClassInfo = GSON.fromJson(new String(Files.readAllBytes(depClassInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            ClassInfo depClassInfo = AbstractRunner.getClassInfo(config, depClassName);
             if (depClassInfo == null) {
-                continue;
+                return depGSBodies;
             }
 
             String info = "";
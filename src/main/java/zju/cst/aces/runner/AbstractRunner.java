@@ -1,7 +1,6 @@
 package zju.cst.aces.runner;
 
 import com.github.javaparser.ParseProblemException;
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.google.gson.*;
@@ -9,11 +8,13 @@ import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import zju.cst.aces.api.Task;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.*;
-import zju.cst.aces.parser.ClassParser;
+import zju.cst.aces.parser.ParserFactory;
 import zju.cst.aces.prompt.PromptGenerator;
 import zju.cst.aces.util.CodeExtractor;
+import zju.cst.aces.util.ReportWriter;
 import zju.cst.aces.util.TestProcessor;
 import zju.cst.aces.util.TokenCounter;
+import zju.cst.aces.util.fork.ForkedTestSummary;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -83,7 +84,7 @@ public abstract class AbstractRunner {
 
     public static String repairImports(String code, List<String> imports) {
         try {
-            CompilationUnit cu = StaticJavaParser.parse(code);
+            CompilationUnit cu = ParserFactory.parse(code);
             cu.addImport("org.mockito", false, true);
             cu.addImport("org.junit.jupiter.api", false, true);
             cu.addImport("org.mockito.Mockito", true, true);
@@ -98,7 +99,7 @@ public abstract class AbstractRunner {
     }
 
     public static String repairPackage(String code, String packageName) {
-        CompilationUnit cu = StaticJavaParser.parse(code).setPackageDeclaration(packageName);
+        CompilationUnit cu = ParserFactory.parse(code).setPackageDeclaration(packageName);
         return cu.toString();
     }
 
@@ -127,7 +128,7 @@ public abstract class AbstractRunner {
     }
 
     public static String changeTestName(String code, String newName) {
-        CompilationUnit cu = StaticJavaParser.parse(code);
+        CompilationUnit cu = ParserFactory.parse(code);
         cu.findFirst(ClassOrInterfaceDeclaration.class).ifPresent(c -> c.setName(newName));
         return cu.toString();
     }
@@ -282,30 +283,14 @@ public abstract class AbstractRunner {
     public static ClassInfo getClassInfo(Config config, String className) throws IOException {
         try {
             String fullClassName = Task.getFullClassName(config, className);
-            Path classInfoPath = config.getParseOutput().resolve(fullClassName.replace(".", File.separator)).resolve("class.json");
-            if (!classInfoPath.toFile().exists()) {
-
-                return null;
-            }
-            return GSON.fromJson(new String(Files.readAllBytes(classInfoPath), StandardCharsets.UTF_8), ClassInfo.class);
+            return config.getInfoRepository().getClassInfo(fullClassName);
         } catch (InvalidPathException e) {
             return null;
         }
     }
 
     public static MethodInfo getMethodInfo(Config config, ClassInfo info, String mSig) throws IOException {
-        String packagePath = info.getPackageName()
-                .replace("package ", "")
-                .replace(".", File.separator)
-                .replace(";", "");
-        Path depMethodInfoPath = config.getParseOutput()
-                .resolve(packagePath)
-                .resolve(info.className)
-                .resolve(ClassParser.getFilePathBySig(mSig, info));
-        if (!depMethodInfoPath.toFile().exists()) {
-            return null;
-        }
-        return GSON.fromJson(new String(Files.readAllBytes(depMethodInfoPath), StandardCharsets.UTF_8), MethodInfo.class);
+        return config.getInfoRepository().getMethodInfo(info, mSig);
     }
 
     public static String getDepInfo(Config config, String depClassName, Set<String> depMethods) throws IOException {
@@ -450,9 +435,8 @@ public abstract class AbstractRunner {
         }
     }
 
-    public synchronized void generateJsonReport(PromptInfo promptInfo, float duration, boolean success) {
+    public void generateJsonReport(PromptInfo promptInfo, float duration, boolean success) {
         Path outputPath = config.getTestOutput();
-        File outputInfo = outputPath.resolve("generationData.json").toFile();
 
         Map<String, String> map = new LinkedHashMap<>();
 
@@ -470,52 +454,11 @@ public abstract class AbstractRunner {
         if (config.getPhaseType().equals("SOFIA"))
             map.put("sofiaActivations", String.valueOf(promptInfo.getSofiaActivations()));
 
-        try {
-            // Creates chatunitest-tests folder in case it does not exist
-            Files.createDirectories(outputPath);
-
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            JsonElement newElement = gson.toJsonTree(map);
-
-            JsonArray jsonArray = null;
-
-            // Validate the JSON element by serializing and then parsing it
-            try {
-                // Round-trip to detect structural issues
-                String jsonStr = gson.toJson(newElement);
-                JsonParser.parseString(jsonStr); // Will throw if malformed
-
-                // Proceed to append only if valid
-                if (outputInfo.exists() && Files.size(outputInfo.toPath()) > 0) {
-                    try (Reader reader = Files.newBufferedReader(outputInfo.toPath())) {
-                        jsonArray = JsonParser.parseReader(reader).getAsJsonArray();
-                    }
-                } else {
-                    jsonArray = new JsonArray(); // If file does not exist, create an empty array
-                }
-
-                // Append the validated element
-                jsonArray.add(newElement);
-
-                try (Writer infoWriter = new FileWriter(outputInfo, false)) { // Overwrite mode
-                    gson.toJson(jsonArray, infoWriter);
-                    infoWriter.flush(); // Ensure all data is written
-                }
-
-            } catch (JsonParseException ex) {
-                System.err.println("Skipping malformed JSON element: " + ex.getMessage());
-                System.err.println(gson.toJson(jsonArray.toString()));
-            }
-
-        } catch (IOException e) {
-            throw new RuntimeException("In AbstractRunner.generateJsonReport: " + e);
-        }
-
+        ReportWriter.forDirectory(outputPath).append(map);
     }
 
-    public synchronized void generateJsonReportHITS(PromptInfo promptInfo, float duration, int nSlices, int successfulSlices) {
+    public void generateJsonReportHITS(PromptInfo promptInfo, float duration, int nSlices, int successfulSlices) {
         Path outputPath = config.getTestOutput();
-        File outputInfo = outputPath.resolve("generationData.json").toFile();
 
         Map<String, Map<String, String>> attemptMapping = new TreeMap<>();
         String fullNamePrefix = promptInfo.getFullTestName().substring(0, promptInfo.getFullTestName().indexOf("_Test") - 1);
@@ -540,45 +483,7 @@ public abstract class AbstractRunner {
                 map.put("sofiaActivations", String.valueOf(promptInfo.getSofiaActivations()));
             attemptMapping.put("attempt" + i, map);
         }
-        try {
-            // Creates chatunitest-tests folder in case it does not exist
-            Files.createDirectories(outputPath);
-
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            JsonElement newElement = gson.toJsonTree(attemptMapping);
-
-            // Validate the JSON element by serializing and then parsing it
-            try {
-                // Round-trip to detect structural issues
-                String jsonStr = gson.toJson(newElement);
-                JsonParser.parseString(jsonStr); // Will throw if malformed
-
-                // Proceed to append only if valid
-                JsonArray jsonArray;
-                if (outputInfo.exists() && Files.size(outputInfo.toPath()) > 0) {
-                    try (Reader reader = Files.newBufferedReader(outputInfo.toPath())) {
-                        jsonArray = JsonParser.parseReader(reader).getAsJsonArray();
-                    }
-                } else {
-                    jsonArray = new JsonArray(); // If file does not exist, create an empty array
-                }
-
-                // Append the validated element
-                jsonArray.add(newElement);
-
-                try (Writer infoWriter = new FileWriter(outputInfo, false)) { // Overwrite mode
-                    gson.toJson(jsonArray, infoWriter);
-                    infoWriter.flush(); // Ensure all data is written
-                }
-
-            } catch (JsonParseException ex) {
-                System.err.println("Skipping malformed JSON element: " + ex.getMessage());
-                // Optionally log the invalid object: System.err.println(gson.toJson(newElement));
-            }
-
-        } catch (IOException e) {
-            throw new RuntimeException("In AbstractRunner.generateJsonReport: " + e);
-        }
+        ReportWriter.forDirectory(outputPath).append(attemptMapping);
     }
 
     public void exportAttemptMapping(PromptInfo promptInfo, Path savePath) {
@@ -611,23 +516,18 @@ public abstract class AbstractRunner {
         }
     }
 
-    public static boolean isExceedMaxTokens(int maxPromptTokens, List<ChatMessage> prompt) {
-        int count = 0;
+    public static boolean isExceedMaxTokens(int maxPromptTokens, String modelName, List<ChatMessage> prompt) {
+        TokenCounter.Budget budget = TokenCounter.newBudget(maxPromptTokens, modelName);
         for (ChatMessage p : prompt) {
-            count += TokenCounter.countToken(p.getContent());
-        }
-        if (count > maxPromptTokens) {
-            return true;
+            if (!budget.add(p.getContent())) {
+                return true;
+            }
         }
         return false;
     }
 
-    public static boolean isExceedMaxTokens(int maxPromptTokens, String prompt) {
-        int count = TokenCounter.countToken(prompt);
-        if (count > maxPromptTokens) {
-            return true;
-        }
-        return false;
+    public static boolean isExceedMaxTokens(int maxPromptTokens, String modelName, String prompt) {
+        return !TokenCounter.newBudget(maxPromptTokens, modelName).add(prompt);
     }
 
     /**
@@ -640,13 +540,8 @@ public abstract class AbstractRunner {
      */
     public static boolean runTest(Config config, String fullTestName, PromptInfo promptInfo, int rounds) {
         String testName = fullTestName.substring(fullTestName.lastIndexOf(".") + 1);
-        Path savePath;
-        if(config.phaseType.equals("HITS") || config.phaseType.equals("SOFIA_HITS")) {
-            savePath = config.getTestOutput().resolve(fullTestName.replace(".", File.separator) + "_slice" + promptInfo.getSliceNum() + ".java"); // todo 这里要加上切片序号
-        } else {
-            savePath = config.getTestOutput().resolve(fullTestName.replace(".", File.separator) + ".java"); // todo 这里要加上切片序号
-
-        }
+        // Tests of HITS slices have their own class, named with the slice number
+        Path savePath = config.getTestOutput().resolve(fullTestName.replace(".", File.separator) + ".java");
         if (promptInfo.getTestPath() == null) {
             promptInfo.setTestPath(savePath);
         }
@@ -660,7 +555,8 @@ public abstract class AbstractRunner {
         // Compilation
         Path compilationErrorPath = config.getErrorOutput().resolve(testName + "_CompilationError_" + rounds + ".txt");
         Path executionErrorPath = config.getErrorOutput().resolve(testName + "_ExecutionError_" + rounds + ".txt");
-        boolean compileResult = config.getValidator().semanticValidate(code, testName, compilationErrorPath, promptInfo);
+        String testCode = code;
+        boolean compileResult = withCompilePermit(config, () -> config.getValidator().semanticValidate(testCode, testName, compilationErrorPath, promptInfo));
         if (!compileResult) {
             config.getLogger().info("Test for method < " + promptInfo.getMethodInfo().getMethodName() + " > compilation failed round " + rounds);
             return false;
@@ -672,12 +568,22 @@ public abstract class AbstractRunner {
         }
 
         // Execution
-        TestExecutionSummary summary = config.getValidator().execute(fullTestName);
+        TestExecutionSummary summary = withCompilePermit(config, () -> config.getValidator().execute(fullTestName));
         if(summary==null){
             config.getLogger().warn("Test for method < " + promptInfo.getMethodInfo().getMethodName() + " > execution timeout round ");
             return true;//如果超时了直接当做成功跳过这个方法
         }
         List<String> errors = extractErrorBySummary(summary, fullTestName);
+        if (ForkedTestSummary.isCrashed(summary)) {
+            // No test has run, so there is nothing to remove or keep
+            TestMessage testMessage = new TestMessage();
+            testMessage.setErrorType(TestMessage.ErrorType.RUNTIME_ERROR);
+            testMessage.setErrorMessage(errors);
+            promptInfo.setErrorMsg(testMessage);
+            exportError(code, errors, executionErrorPath);
+            config.getLogger().info("Test for method < " + promptInfo.getMethodInfo().getMethodName() + " > execution failed round " + rounds);
+            return false;
+        }
         boolean compileSuccess = false;
         //execution error
         if (summary.getTestsFailedCount() > 0 || summary.getTestsSucceededCount() == 0) {
@@ -686,9 +592,9 @@ public abstract class AbstractRunner {
                 // Remove errors successfully, recompile and re-execute test
                 if (testProcessed != null) {
                     config.getLogger().debug("[Original Test]:\n" + code);
-                    if (config.getValidator().semanticValidate(testProcessed, testName, compilationErrorPath, null)) {
+                    if (withCompilePermit(config, () -> config.getValidator().semanticValidate(testProcessed, testName, compilationErrorPath, null))) {
                         compileSuccess=true;
-                        if (config.getValidator().runtimeValidate(fullTestName)) {
+                        if (withCompilePermit(config, () -> config.getValidator().runtimeValidate(fullTestName))) {
                             exportTest(testProcessed, savePath);
                             config.getLogger().debug("[Processed Test]:\n" + testProcessed);
                             config.getLogger().info("Processed test for method < " + promptInfo.getMethodInfo().getMethodName() + " > generated successfully round " + rounds);
@@ -716,6 +622,24 @@ public abstract class AbstractRunner {
         return true;
     }
 
+    /**
+     * Compilation and execution share a global limit, independent of the number of workers waiting for the LLM.
+     */
+    public static <T> T withCompilePermit(Config config, WorkScheduler.Unit<T> call) {
+        CancellationToken.checkCurrent();
+        try {
+            return config.getScheduler().withCompilePermit(() -> {
+                // The attempt may have been cancelled while waiting
+                CancellationToken.checkCurrent();
+                return call.call();
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("In AbstractRunner.withCompilePermit: " + e);
+        }
+    }
+
     public static boolean isOnlyAssertionError(List<String> errors) {
         for (String error : errors) {
             if (!error.toLowerCase().contains("AssertionError".toLowerCase())
@@ -731,7 +655,9 @@ public abstract class AbstractRunner {
         summary.getFailures().forEach(failure -> {
             for (StackTraceElement st : failure.getException().getStackTrace()) {
                 if (st.getClassName().contains(matchName)) {
-                    errors.add("Error in " + failure.getTestIdentifier().getLegacyReportingName()
+                    String testName = failure.getTestIdentifier() == null ? matchName
+                            : failure.getTestIdentifier().getLegacyReportingName();
+                    errors.add("Error in " + testName
                             + ": line " + st.getLineNumber() + " : "
                             + failure.getException().toString());
                 }
@@ -0,0 +1,81 @@
+package zju.cst.aces.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation of an attempt. The token is bound to the thread running the attempt, so that
+ * the steps deep inside a phase can find it without passing it through every signature: LLM calls register
+ * a callback that aborts the request, compilation and execution check it before they start.
+ */
+public class CancellationToken {
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private volatile boolean cancelled;
+
+    /**
+     * The token of the attempt running on this thread, null outside of a cancellable attempt.
+     */
+    public static CancellationToken current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Throw if the attempt running on this thread has been cancelled.
+     */
+    public static void checkCurrent() {
+        CancellationToken token = CURRENT.get();
+        if (token != null && token.isCancelled()) {
+            throw new CancellationException("Attempt cancelled");
+        }
+    }
+
+    public <T> T runWith(WorkScheduler.Unit<T> unit) throws Exception {
+        CancellationToken previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return unit.call();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            pending = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        pending.forEach(Runnable::run);
+    }
+
+    /**
+     * Run the callback on cancellation, right away if already cancelled.
+     * The returned handle unregisters it once the work it aborts is over.
+     */
+    public Runnable onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return () -> {
+                    synchronized (this) {
+                        callbacks.remove(callback);
+                    }
+                };
+            }
+        }
+        callback.run();
+        return () -> {
+        };
+    }
+}
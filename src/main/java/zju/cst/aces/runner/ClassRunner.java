@@ -14,10 +14,9 @@ import zju.cst.aces.util.ClassNameProcessor;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
 
@@ -32,8 +31,10 @@ public class ClassRunner extends AbstractRunner {
         if (!infoDir.isDirectory()) {
             config.getLogger().warn("Error: " + fullClassName + " no parsed info found");
         }
-        File classInfoFile = new File(infoDir + File.separator + "class.json");
-        classInfo = GSON.fromJson(new String(Files.readAllBytes(classInfoFile.toPath()), StandardCharsets.UTF_8), ClassInfo.class);
+        classInfo = config.getInfoRepository().getClassInfo(fullClassName);
+        if (classInfo == null) {
+            throw new IOException("No parsed class info found for " + fullClassName);
+        }
     }
 
     @Override
@@ -59,70 +60,85 @@ public class ClassRunner extends AbstractRunner {
     }
 
     public void methodJob() {
-        ExecutorService executor = Executors.newFixedThreadPool(config.getMethodThreads());
-        List<Future<String>> futures = new ArrayList<>();
+        config.getScheduler().await(Collections.singletonList(startAsync()));
+    }
+
+    /**
+     * Submit one unit per method to the scheduler, the returned future completes once all of them
+     * (and the merge of the class) are done.
+     */
+    public CompletableFuture<Void> startAsync() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
         for (String mSig : classInfo.methodSigs.keySet()) {
-            Callable<String> callable = new Callable<String>() {
-                @Override
-                public String call() throws Exception {
-                    MethodInfo methodInfo = getMethodInfo(config, classInfo, mSig);
-                    if (methodInfo == null) {
-                        return "No parsed info found for " + mSig + " in " + fullClassName;
-                    }
-                    if (!Counter.filter(methodInfo)) {
-                        return "Skip method: " + mSig + " in class: " + fullClassName;
-                    }
-//                    new MethodRunner(config, fullClassName, methodInfo).start();
-                    selectRunner(config.getPhaseType(), fullClassName, methodInfo);
-                    int newCount = config.getCompletedJobCount().incrementAndGet();
-                    config.getLogger().info(String.format("\n==========================\n[%s] Completed Method Jobs:   [ %s /  %s]", config.pluginSign, newCount, config.getJobCount()));
-                    return "Processed " + mSig;
-                }
-            };
-            Future<String> future = executor.submit(callable);
-            futures.add(future);
+            futures.add(submitMethod(mSig));
         }
+        return mergeWhenDone(futures);
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                executor.shutdownNow();
+    /**
+     * Submit the unit of one method of this class.
+     */
+    public CompletableFuture<Void> submitMethod(String mSig) {
+        return config.getScheduler().supply(() -> {
+            MethodInfo methodInfo = getMethodInfo(config, classInfo, mSig);
+            if (methodInfo == null) {
+                config.getLogger().debug("No parsed info found for " + mSig + " in " + fullClassName);
+                return null;
+            }
+            if (!Counter.filter(methodInfo)) {
+                config.getLogger().debug("Skip method: " + mSig + " in class: " + fullClassName);
+                return null;
             }
+            return createRunner(config.getPhaseType(), fullClassName, methodInfo);
+        }).thenCompose(runner -> {
+            if (runner == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return runner.startAsync().thenRun(() -> {
+                int newCount = config.getCompletedJobCount().incrementAndGet();
+                config.getLogger().info(String.format("\n==========================\n[%s] Completed Method Jobs:   [ %s /  %s]", config.pluginSign, newCount, config.getJobCount()));
+            });
+        }).exceptionally(e -> {
+            config.getLogger().error("Error when generating tests for " + mSig + " in " + fullClassName + ": " + e.getCause());
+            return null;
         });
+    }
 
-        for (Future<String> future : futures) {
-            try {
-                String result = future.get();
-                System.out.println(result);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+    /**
+     * Merge the tests of the class once all the given method units are done.
+     */
+    public CompletableFuture<Void> mergeWhenDone(List<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> {
+            if (config.isEnableMerge()) {
+                try {
+                    new TestClassMerger(config, fullClassName).mergeWithSuite();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
             }
-        }
-
-        executor.shutdown();
+        });
     }
 
     public void selectRunner(String runnerType, String fullClassName, MethodInfo methodInfo) throws IOException {
+        createRunner(runnerType, fullClassName, methodInfo).start();
+    }
+
+    public MethodRunner createRunner(String runnerType, String fullClassName, MethodInfo methodInfo) throws IOException {
         // Map templateName to a specific PromptFile enum constant
         switch (runnerType) {
             case "CHATTESTER":
-                new ChatTesterRunner(config, fullClassName, methodInfo).start();
-                break;
+                return new ChatTesterRunner(config, fullClassName, methodInfo);
             case "HITS":
 //                config.getLogger().warn("HITS will be ignored!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                new HITSRunner(config, fullClassName, methodInfo).start();
-                break;
+                return new HITSRunner(config, fullClassName, methodInfo);
             case "MUTAP":
-                new MUTAPRunner(config, fullClassName, methodInfo).start();
-                break;
+                return new MUTAPRunner(config, fullClassName, methodInfo);
             case "SOFIA":
-                new SofiaRunner(config, fullClassName, methodInfo).start();
-                break;
+                return new SofiaRunner(config, fullClassName, methodInfo);
             case "SOFIA_HITS":
-                new SofiaHitsRunner(config, fullClassName, methodInfo).start();
-                break;
+                return new SofiaHitsRunner(config, fullClassName, methodInfo);
             default:
-                new MethodRunner(config, fullClassName, methodInfo).start();
-                break;
+                return new MethodRunner(config, fullClassName, methodInfo);
         }
     }
 }
@@ -0,0 +1,254 @@
+package zju.cst.aces.runner;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import lombok.Data;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ClassInfo;
+import zju.cst.aces.dto.MethodInfo;
+import zju.cst.aces.util.Counter;
+import zju.cst.aces.util.LlmRateLimiter;
+import zju.cst.aces.util.ReportWriter;
+import zju.cst.aces.util.TokenCounter;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Orders the focal methods of a project by the value of testing them relative to the LLM tokens it will take,
+ * and admits them under a global token and time budget, so that a limited run spends its budget on the best methods.
+ * <p>
+ * Value grows with the cyclomatic complexity and the dependency fan-out of a method, and with the part of it
+ * not covered yet according to the JaCoCo report of the project (target/site/jacoco/jacoco.xml), if there is one.
+ * Cost is the estimated prompt and response tokens over the expected attempts and rounds.
+ * Both are weighted by the success rate of the method in earlier runs, read from the generation report.
+ */
+public class MethodPlanner {
+    private static final Pattern DECISION = Pattern.compile("\\b(if|for|while|case|catch)\\b|&&|\\|\\||\\?(?!\\s*(extends|super)\\b|\\s*[>,])");
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"(\\\\.|[^\"\\\\])*\"");
+    private static final int PROMPT_OVERHEAD_TOKENS = 800;
+
+    private final Config config;
+    private final Map<String, double[]> history = new HashMap<>();
+    private final Map<String, Double> coverage = new HashMap<>();
+    // Guarded by this, items are compared by identity
+    private final Map<Item, Long> admitted = new IdentityHashMap<>();
+    private final long tokenBudget;
+    private final long deadline;
+    private long reservedTokens;
+
+    @Data
+    public static class Item {
+        private final String fullClassName;
+        private final MethodInfo methodInfo;
+        private double complexity;
+        private int fanOut;
+        private double coverage;
+        private double successRate;
+        private long estimatedTokens;
+        private double priority;
+    }
+
+    public MethodPlanner(Config config) {
+        this.config = config;
+        this.tokenBudget = config.getTokenBudget();
+        this.deadline = config.getTimeBudget() > 0
+                ? System.currentTimeMillis() + config.getTimeBudget() * 60_000L : Long.MAX_VALUE;
+        loadHistory();
+        loadCoverage();
+    }
+
+    /**
+     * Score all focal methods that pass {@link Counter#filter}, highest priority first.
+     */
+    public List<Item> plan(List<String> fullClassNames) {
+        List<Item> items = new ArrayList<>();
+        for (String fullClassName : fullClassNames) {
+            try {
+                ClassInfo classInfo = AbstractRunner.getClassInfo(config, fullClassName);
+                if (classInfo == null || !Counter.filter(classInfo)) {
+                    continue;
+                }
+                for (String mSig : classInfo.methodSigs.keySet()) {
+                    MethodInfo methodInfo = AbstractRunner.getMethodInfo(config, classInfo, mSig);
+                    if (methodInfo == null || !Counter.filter(methodInfo)) {
+                        continue;
+                    }
+                    items.add(score(classInfo, methodInfo));
+                }
+            } catch (IOException e) {
+                config.getLogger().warn("Failed to plan class " + fullClassName + ": " + e);
+            }
+        }
+        items.sort(Comparator.comparingDouble(Item::getPriority).reversed());
+        return items;
+    }
+
+    /**
+     * Whether the method may start within the budget. An admitted method has to be {@link #release released}.
+     */
+    public synchronized boolean admit(Item item) {
+        if (System.currentTimeMillis() > deadline) {
+            config.getLogger().info("Time budget exhausted, skip " + item.getMethodInfo().getMethodName() + " in " + item.getFullClassName());
+            return false;
+        }
+        if (tokenBudget > 0 && getUsedTokens() + reservedTokens + item.getEstimatedTokens() > tokenBudget) {
+            config.getLogger().info("Token budget exhausted, skip " + item.getMethodInfo().getMethodName() + " in " + item.getFullClassName());
+            return false;
+        }
+        reservedTokens += item.getEstimatedTokens();
+        admitted.put(item, item.getEstimatedTokens());
+        return true;
+    }
+
+    /**
+     * The method finished, its tokens are now part of the used tokens.
+     */
+    public synchronized void release(Item item) {
+        Long reserved = admitted.remove(item);
+        if (reserved != null) {
+            reservedTokens -= reserved;
+        }
+    }
+
+    Item score(ClassInfo classInfo, MethodInfo methodInfo) {
+        Item item = new Item(classInfo.fullClassName, methodInfo);
+        item.setComplexity(complexity(methodInfo.getSourceCode()));
+        int fanOut = 0;
+        if (methodInfo.getDependentMethods() != null) {
+            for (Set<String> methods : methodInfo.getDependentMethods().values()) {
+                fanOut += 1 + methods.size();
+            }
+        }
+        item.setFanOut(fanOut);
+        String key = methodKey(classInfo.fullClassName, methodInfo.getMethodSignature());
+        double[] outcomes = history.get(key);
+        // Laplace estimate, 0.5 for methods never tried before
+        double successRate = outcomes == null ? 0.5 : (outcomes[0] + 1) / (outcomes[1] + 2);
+        item.setSuccessRate(successRate);
+        String jvmName = methodInfo.isConstructor() ? "<init>" : methodInfo.getMethodName();
+        Double covered = coverage.get(classInfo.fullClassName.replace('.', '/') + "#" + jvmName
+                + (methodInfo.getMethodDescriptor() == null ? "" : methodInfo.getMethodDescriptor()));
+        item.setCoverage(covered == null ? 0 : covered);
+
+        long promptTokens = TokenCounter.countToken(methodInfo.getSourceCode(), config.getModel().getModelName()) + PROMPT_OVERHEAD_TOKENS
+                + (long) fanOut * 40;
+        double rounds = 1 + (1 - successRate) * Math.max(0, config.getMaxRounds() - 1);
+        double attempts = config.isStopWhenSuccess()
+                ? Math.min(config.getTestNumber(), 1 / Math.max(0.2, successRate)) : config.getTestNumber();
+        item.setEstimatedTokens((long) ((promptTokens + config.getMaxResponseTokens()) * rounds * attempts));
+
+        double value = (1 + log2(1 + item.getComplexity())) * (1 + 0.5 * log2(1 + fanOut))
+                * (1 - item.getCoverage()) * (0.25 + successRate);
+        item.setPriority(value / Math.max(1, item.getEstimatedTokens() / 1000.0));
+        return item;
+    }
+
+    static double complexity(String sourceCode) {
+        if (sourceCode == null) {
+            return 1;
+        }
+        Matcher matcher = DECISION.matcher(STRING_LITERAL.matcher(sourceCode).replaceAll("\"\""));
+        int decisions = 0;
+        while (matcher.find()) {
+            decisions++;
+        }
+        return 1 + decisions;
+    }
+
+    private long getUsedTokens() {
+        LlmRateLimiter limiter = config.getRateLimiter();
+        return limiter == null ? 0 : limiter.getUsedTokens();
+    }
+
+    /**
+     * Outcomes of earlier runs from the generation report, as {successes, tries} per method.
+     */
+    private void loadHistory() {
+        Path report = config.getTestOutput().resolve(ReportWriter.LINES_FILE);
+        if (!Files.exists(report)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(report, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JsonObject element = JsonParser.parseString(line).getAsJsonObject();
+                    if (!element.has("success") || !element.has("methodSig")) {
+                        continue;
+                    }
+                    String className = element.get("packageName").getAsString().isEmpty()
+                            ? element.get("className").getAsString()
+                            : element.get("packageName").getAsString() + "." + element.get("className").getAsString();
+                    double[] outcomes = history.computeIfAbsent(methodKey(className, element.get("methodSig").getAsString()),
+                            k -> new double[2]);
+                    outcomes[0] += element.get("success").getAsBoolean() ? 1 : 0;
+                    outcomes[1] += 1;
+                } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                    // Torn or foreign line
+                }
+            }
+        } catch (IOException e) {
+            config.getLogger().warn("Failed to read generation history: " + e);
+        }
+    }
+
+    /**
+     * Line coverage per method from the JaCoCo XML report, keyed by internal class name, method name and descriptor.
+     */
+    private void loadCoverage() {
+        Path report = config.getProject().getBasedir().toPath().resolve("target/site/jacoco/jacoco.xml");
+        if (!Files.exists(report)) {
+            return;
+        }
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(report.toFile());
+            NodeList classes = document.getElementsByTagName("class");
+            for (int i = 0; i < classes.getLength(); i++) {
+                Element classElement = (Element) classes.item(i);
+                NodeList methods = classElement.getElementsByTagName("method");
+                for (int j = 0; j < methods.getLength(); j++) {
+                    Element method = (Element) methods.item(j);
+                    NodeList counters = method.getElementsByTagName("counter");
+                    for (int k = 0; k < counters.getLength(); k++) {
+                        Element counter = (Element) counters.item(k);
+                        if (!"LINE".equals(counter.getAttribute("type"))) {
+                            continue;
+                        }
+                        double missed = Double.parseDouble(counter.getAttribute("missed"));
+                        double covered = Double.parseDouble(counter.getAttribute("covered"));
+                        if (missed + covered > 0) {
+                            coverage.put(classElement.getAttribute("name") + "#" + method.getAttribute("name")
+                                    + method.getAttribute("desc"), covered / (missed + covered));
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            config.getLogger().warn("Failed to read JaCoCo report " + report + ": " + e);
+        }
+    }
+
+    private static String methodKey(String fullClassName, String methodSignature) {
+        return fullClassName + "#" + methodSignature;
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+}
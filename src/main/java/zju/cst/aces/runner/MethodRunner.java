@@ -5,11 +5,13 @@ import zju.cst.aces.api.phase.PhaseImpl;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.impl.PromptConstructorImpl;
 import zju.cst.aces.dto.*;
+import zju.cst.aces.util.JsonResponseProcessor;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class MethodRunner extends ClassRunner {
 
@@ -22,38 +24,141 @@ public class MethodRunner extends ClassRunner {
 
     @Override
     public void start() throws IOException {
-        if (!config.isStopWhenSuccess() && config.isEnableMultithreading()) {
-            ExecutorService executor = Executors.newFixedThreadPool(config.getTestNumber());
-            List<Future<String>> futures = new ArrayList<>();
+        if (config.isEnableMultithreading()) {
+            config.getScheduler().await(Collections.singletonList(startAsync()));
+        } else {
+            if (config.isStopWhenSuccess() && hasSucceeded()) {
+                return;
+            }
             for (int num = 0; num < config.getTestNumber(); num++) {
-                int finalNum = num;
-                Callable<String> callable = () -> {
-                    startRounds(finalNum);
-                    return "";
-                };
-                Future<String> future = executor.submit(callable);
-                futures.add(future);
-            }
-            Runtime.getRuntime().addShutdownHook(new Thread(executor::shutdownNow));
-
-            for (Future<String> future : futures) {
-                try {
-                    String result = future.get();
-                    System.out.println(result);
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
+                boolean result = runAttempt(num); //todo
+                if (result && config.isStopWhenSuccess()) {
+                    break;
                 }
             }
+        }
+    }
 
-            executor.shutdown();
-        } else {
+    /**
+     * Submit the attempts of this method to the scheduler. Without stopWhenSuccess all attempts run in parallel,
+     * otherwise each attempt is submitted once the previous one has failed, or with speculativeAttempts > 1,
+     * that many run at once and the others are cancelled when one succeeds.
+     */
+    @Override
+    public CompletableFuture<Void> startAsync() {
+        if (config.isStopWhenSuccess() && hasSucceeded()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!config.isStopWhenSuccess()) {
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
             for (int num = 0; num < config.getTestNumber(); num++) {
-                boolean result = startRounds(num); //todo
-                if (result && config.isStopWhenSuccess()) {
-                    break;
+                futures.add(submitAttempt(num));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        }
+        if (config.getSpeculativeAttempts() > 1) {
+            return new Speculation().start();
+        }
+        return startAttemptsFrom(0);
+    }
+
+    private CompletableFuture<Void> startAttemptsFrom(int num) {
+        if (num >= config.getTestNumber()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return submitAttempt(num).thenCompose(result -> result
+                ? CompletableFuture.completedFuture(null)
+                : startAttemptsFrom(num + 1));
+    }
+
+    /**
+     * Attempts in a sliding window: a failed attempt makes room for the next one, the first success
+     * cancels the attempts still running. Cancelled attempts stop at their next LLM call, compilation or execution.
+     */
+    private class Speculation {
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final Map<Integer, CancellationToken> running = new HashMap<>();
+        private int next;
+        private boolean succeeded;
+
+        CompletableFuture<Void> start() {
+            launch();
+            return done;
+        }
+
+        private void launch() {
+            List<Integer> started = new ArrayList<>();
+            synchronized (this) {
+                while (!succeeded && running.size() < config.getSpeculativeAttempts() && next < config.getTestNumber()) {
+                    int num = next++;
+                    running.put(num, new CancellationToken());
+                    started.add(num);
+                }
+                if (running.isEmpty()) {
+                    done.complete(null);
+                    return;
+                }
+            }
+            for (int num : started) {
+                CancellationToken token;
+                synchronized (this) {
+                    token = running.get(num);
                 }
+                config.getScheduler().supply(() -> token.runWith(() -> runAttempt(num)))
+                        .whenComplete((result, e) -> finish(num, e == null && Boolean.TRUE.equals(result), e));
             }
         }
+
+        private void finish(int num, boolean success, Throwable e) {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof CancellationException) {
+                    config.getLogger().debug("Cancelled attempt " + num + " for " + methodInfo.getMethodName() + " in " + fullClassName);
+                } else {
+                    config.getLogger().error("Error in attempt " + num + " for " + methodInfo.getMethodName() + " in " + fullClassName + ": " + cause);
+                }
+            }
+            List<CancellationToken> cancelled = new ArrayList<>();
+            synchronized (this) {
+                running.remove(num);
+                if (success && !succeeded) {
+                    succeeded = true;
+                    cancelled.addAll(running.values());
+                }
+            }
+            cancelled.forEach(CancellationToken::cancel);
+            launch();
+        }
+    }
+
+    private CompletableFuture<Boolean> submitAttempt(int num) {
+        return config.getScheduler().supply(() -> runAttempt(num)).exceptionally(e -> {
+            config.getLogger().error("Error in attempt " + num + " for " + methodInfo.getMethodName() + " in " + fullClassName + ": " + e.getCause());
+            return false;
+        });
+    }
+
+    /**
+     * Run the attempt, unless the journal of a resumed run says it already finished.
+     */
+    private boolean runAttempt(int num) throws IOException {
+        RunJournal journal = config.getJournal();
+        if (journal == null) {
+            return startRounds(num);
+        }
+        RunJournal.Status status = journal.getStatus(fullClassName, methodInfo.getMethodSignature(), num);
+        if (status != null) {
+            config.getLogger().debug("Skip finished attempt " + num + " for " + methodInfo.getMethodName() + " in " + fullClassName);
+            return status == RunJournal.Status.SUCCESS;
+        }
+        boolean result = startRounds(num);
+        journal.recordResult(fullClassName, methodInfo.getMethodSignature(), num, result);
+        return result;
+    }
+
+    private boolean hasSucceeded() {
+        RunJournal journal = config.getJournal();
+        return journal != null && journal.hasSucceeded(fullClassName, methodInfo.getMethodSignature(), config.getTestNumber());
     }
 
     public boolean startRounds(final int num) throws IOException {
@@ -62,28 +167,53 @@ public class MethodRunner extends ClassRunner {
 
         // Prompt Construction Phase
         PromptConstructorImpl pc = phase.generatePrompt(classInfo, methodInfo,num);
+        try {
+            return runRounds(phase, pc, num);
+        } catch (CancellationException e) {
+            // Keep the rounds done so far, including the tokens of the aborted one
+            exportRecord(pc.getPromptInfo(), classInfo, num);
+            throw e;
+        }
+    }
+
+    private boolean runRounds(Phase phase, PromptConstructorImpl pc, int num) throws IOException {
         PromptInfo promptInfo = pc.getPromptInfo();
         promptInfo.setRound(0);
 
         long startTime = System.nanoTime();
-        // Test Generation Phase
-        phase.generateTest(pc);
+        RunJournal journal = config.getJournal();
+        RunJournal.Entry lastRound = journal == null ? null
+                : journal.getLastRound(fullClassName, methodInfo.getMethodSignature(), num);
+        int firstRepairRound = 1;
+        if (lastRound != null) {
+            // Continue the repair chain of an interrupted run
+            promptInfo.setRecords(lastRound.records);
+            promptInfo.setUnitTest(lastRound.unitTest);
+            promptInfo.setErrorMsg(lastRound.errorMsg);
+            firstRepairRound = lastRound.round + 1;
+            config.getLogger().info("Resume test for method < " + methodInfo.getMethodName() + " > after round " + lastRound.round);
+        } else {
+            // Test Generation Phase
+            phase.generateTest(pc);
 
+            // Validation
+            if (phase.validateTest(pc)) {
+                exportRecord(pc.getPromptInfo(), classInfo, num);
+                if (config.generateJsonReport) {
+                    long endTime = System.nanoTime();
+                    float duration = (float)(endTime - startTime)/ 1_000_000_000;
+                    generateJsonReport(pc.getPromptInfo(), duration, true);
+                }
 
-        // Validation
-        if (phase.validateTest(pc)) {
-            exportRecord(pc.getPromptInfo(), classInfo, num);
-            if (config.generateJsonReport) {
-                long endTime = System.nanoTime();
-                float duration = (float)(endTime - startTime)/ 1_000_000_000;
-                generateJsonReport(pc.getPromptInfo(), duration, true);
+                return true;
+            }
+            if (journal != null) {
+                journal.recordRound(promptInfo, num);
             }
-
-            return true;
         }
 
         // Validation and Repair Phase
-        for (int rounds = 1; rounds < config.getMaxRounds(); rounds++) {
+        for (int rounds = firstRepairRound; rounds < config.getMaxRounds(); rounds++) {
 
             promptInfo.setRound(rounds);
 
@@ -101,7 +231,9 @@ public class MethodRunner extends ClassRunner {
                 }
                 return true;
             }
-
+            if (journal != null) {
+                journal.recordRound(promptInfo, num);
+            }
         }
 
         exportRecord(pc.getPromptInfo(), classInfo, num);
@@ -112,4 +244,101 @@ public class MethodRunner extends ClassRunner {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Generate, validate and repair a test for every slice of the focal method, each slice as its own unit on the
+     * scheduler when multithreading is enabled. A slice works on a copy of the prompt info and its own test class
+     * (the attempt's test name with a _slice suffix), so slices neither share rounds, records and correct tests
+     * nor compile over each other's classes. Records and the report of the attempt are merged in slice order at the end.
+     * @return If the last slice was successful, as in the sequential loop
+     */
+    protected boolean runSlices(PromptConstructorImpl pc, List<JsonResponseProcessor.JsonData.Step> steps, int num, long startTime,
+                                Consumer<PromptConstructorImpl> generateSliceTest, Predicate<PromptConstructorImpl> validateTest) {
+        PromptInfo promptInfo = pc.getPromptInfo();
+        Map<Integer, PromptConstructorImpl> slices = new TreeMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            if (steps.get(i) != null) {
+                slices.put(i, newSlicePrompt(pc, i, steps.get(i)));
+            }
+        }
+
+        Map<Integer, Boolean> results = new HashMap<>();
+        if (config.isEnableMultithreading()) {
+            // Slices run on other workers, they stop with this attempt when it is cancelled
+            CancellationToken token = CancellationToken.current();
+            Map<Integer, CompletableFuture<Boolean>> futures = new TreeMap<>();
+            for (Map.Entry<Integer, PromptConstructorImpl> slice : slices.entrySet()) {
+                futures.put(slice.getKey(), config.getScheduler().supply(() -> token == null
+                        ? runSlice(slice.getValue(), generateSliceTest, validateTest)
+                        : token.runWith(() -> runSlice(slice.getValue(), generateSliceTest, validateTest))));
+            }
+            List<Boolean> joined = config.getScheduler().join(new ArrayList<>(futures.values()));
+            int index = 0;
+            for (Integer sliceNum : futures.keySet()) {
+                results.put(sliceNum, joined.get(index++));
+            }
+        } else {
+            for (Map.Entry<Integer, PromptConstructorImpl> slice : slices.entrySet()) {
+                results.put(slice.getKey(), runSlice(slice.getValue(), generateSliceTest, validateTest));
+            }
+        }
+
+        int successCount = 0;
+        boolean hasErrors = false;
+        for (Map.Entry<Integer, PromptConstructorImpl> slice : slices.entrySet()) {
+            PromptInfo sliceInfo = slice.getValue().getPromptInfo();
+            hasErrors = !results.get(slice.getKey());
+            if (!hasErrors) {
+                successCount++;
+            }
+            promptInfo.getRecords().addAll(sliceInfo.getRecords());
+            exportSliceRecord(sliceInfo, classInfo, num, slice.getKey());
+        }
+        if (successCount > 0) {
+            exportRecord(promptInfo, classInfo, num);
+        }
+        if (config.generateJsonReport) {
+            long endTime = System.nanoTime();
+            float duration = (float) (endTime - startTime) / 1_000_000_000;
+            generateJsonReportHITS(promptInfo, duration, steps.size(), successCount);
+        }
+        return !hasErrors;
+    }
+
+    private boolean runSlice(PromptConstructorImpl slicePc, Consumer<PromptConstructorImpl> generateSliceTest,
+                             Predicate<PromptConstructorImpl> validateTest) {
+        PromptInfo sliceInfo = slicePc.getPromptInfo();
+        // Round 0 generates the test, the following rounds repair it
+        for (int rounds = 0; rounds < Math.max(1, config.getMaxRounds()); rounds++) {
+            sliceInfo.setRound(rounds);
+            generateSliceTest.accept(slicePc);
+            if (validateTest.test(slicePc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PromptConstructorImpl newSlicePrompt(PromptConstructorImpl pc, int sliceNum, JsonResponseProcessor.JsonData.Step step) {
+        PromptInfo promptInfo = pc.getPromptInfo();
+        PromptInfo sliceInfo = new PromptInfo(promptInfo);
+        sliceInfo.setRecords(new ArrayList<>());
+        sliceInfo.setCorrectTests(new HashMap<>());
+        sliceInfo.setErrorMsg(null);
+        sliceInfo.setUnitTest("");
+        sliceInfo.setOtherMethodBodies(promptInfo.getOtherMethodBodies());
+        sliceInfo.setExternalConstructorDeps(promptInfo.getExternalConstructorDeps());
+        sliceInfo.setExternalMethodDeps(promptInfo.getExternalMethodDeps());
+        sliceInfo.setMethodDescriptor(promptInfo.getMethodDescriptor());
+        sliceInfo.setMethodSlicePath(promptInfo.getMethodSlicePath());
+        sliceInfo.setTestNum(promptInfo.getTestNum());
+        sliceInfo.setRound(0);
+        sliceInfo.setSliceNum(sliceNum);
+        sliceInfo.setSliceStep(step);
+
+        PromptConstructorImpl slicePc = new PromptConstructorImpl(config);
+        slicePc.setPromptInfo(sliceInfo);
+        slicePc.setFullTestName(pc.getFullTestName() + "_slice" + sliceNum);
+        return slicePc;
+    }
+}
@@ -0,0 +1,225 @@
+package zju.cst.aces.runner;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.dto.RoundRecord;
+import zju.cst.aces.dto.TestMessage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a project run, so that a run which died can be resumed where it stopped.
+ * Every finished repair round and every finished attempt of a (class, method, attempt) unit is appended to the
+ * journal as one JSON line. Lines are buffered and forced to disk in batches, every {@link #SYNC_INTERVAL_MILLIS}
+ * or once {@link #SYNC_BATCH} lines are pending, and on close; a torn last line is ignored when the journal is read.
+ * <p>
+ * When resuming, attempts that finished are not run again, and an attempt that stopped between repair rounds
+ * continues after the last round in the journal. Without resume the journal of the previous run is discarded.
+ */
+public class RunJournal {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final long SYNC_INTERVAL_MILLIS = 200;
+    private static final int SYNC_BATCH = 256;
+
+    public enum Status {
+        ROUND,
+        SUCCESS,
+        FAILURE
+    }
+
+    public static class Entry {
+        public String className;
+        public String methodSignature;
+        public int attempt;
+        public Status status;
+        public int round;
+        public String unitTest;
+        public TestMessage errorMsg;
+        public List<RoundRecord> records;
+    }
+
+    private final Path path;
+    private final Map<String, Status> finished = new ConcurrentHashMap<>();
+    private final Map<String, Entry> partial = new ConcurrentHashMap<>();
+    private final FileOutputStream file;
+    private final Writer writer;
+    private final ScheduledExecutorService syncer;
+    private int pending;
+    private boolean closed;
+    private final Thread shutdownHook = new Thread(this::close);
+
+    private RunJournal(Path path, boolean resume) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.getParent());
+        if (resume && Files.exists(path)) {
+            long valid = read();
+            try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+                raf.setLength(valid);
+            }
+        }
+        this.file = new FileOutputStream(path.toFile(), resume);
+        this.writer = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "run-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public static RunJournal open(Path path, boolean resume) {
+        try {
+            return new RunJournal(path, resume);
+        } catch (IOException e) {
+            throw new RuntimeException("In RunJournal.open: " + e);
+        }
+    }
+
+    /**
+     * Status of the attempt in an earlier run, null if it did not finish.
+     */
+    public Status getStatus(String className, String methodSignature, int attempt) {
+        return finished.get(key(className, methodSignature, attempt));
+    }
+
+    public boolean hasSucceeded(String className, String methodSignature, int attempts) {
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            if (getStatus(className, methodSignature, attempt) == Status.SUCCESS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The last repair round of an unfinished attempt, null if there is none.
+     */
+    public Entry getLastRound(String className, String methodSignature, int attempt) {
+        return partial.get(key(className, methodSignature, attempt));
+    }
+
+    public void recordRound(PromptInfo promptInfo, int attempt) {
+        Entry entry = newEntry(promptInfo.getFullClassName(), promptInfo.getMethodSignature(), attempt, Status.ROUND);
+        entry.round = promptInfo.getRound();
+        entry.unitTest = promptInfo.getUnitTest();
+        entry.errorMsg = promptInfo.getErrorMsg();
+        entry.records = new ArrayList<>(promptInfo.getRecords());
+        append(entry);
+    }
+
+    public void recordResult(String className, String methodSignature, int attempt, boolean success) {
+        append(newEntry(className, methodSignature, attempt, success ? Status.SUCCESS : Status.FAILURE));
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        syncer.shutdownNow();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Closed by the hook itself
+        }
+        try {
+            writer.flush();
+            file.getFD().sync();
+            writer.close();
+        } catch (IOException e) {
+            // Whatever reached the disk is still readable
+        }
+    }
+
+    private static Entry newEntry(String className, String methodSignature, int attempt, Status status) {
+        Entry entry = new Entry();
+        entry.className = className;
+        entry.methodSignature = methodSignature;
+        entry.attempt = attempt;
+        entry.status = status;
+        return entry;
+    }
+
+    private synchronized void append(Entry entry) {
+        if (closed) {
+            return;
+        }
+        try {
+            writer.write(GSON.toJson(entry));
+            writer.write('\n');
+            if (++pending >= SYNC_BATCH) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In RunJournal.append: " + e);
+        }
+    }
+
+    private synchronized void sync() {
+        if (closed || pending == 0) {
+            return;
+        }
+        try {
+            writer.flush();
+            file.getFD().sync();
+            pending = 0;
+        } catch (IOException e) {
+            // Retried with the next batch
+        }
+    }
+
+    /**
+     * Load the journal, returns the length of its complete lines.
+     */
+    private long read() throws IOException {
+        long valid = 0;
+        long offset = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = GSON.fromJson(new String(line.toByteArray(), StandardCharsets.UTF_8), Entry.class);
+                } catch (JsonSyntaxException e) {
+                    break;
+                }
+                line.reset();
+                if (entry == null || entry.status == null) {
+                    break;
+                }
+                String key = key(entry.className, entry.methodSignature, entry.attempt);
+                if (entry.status == Status.ROUND) {
+                    partial.put(key, entry);
+                } else {
+                    partial.remove(key);
+                    finished.put(key, entry.status);
+                }
+                valid = offset;
+            }
+        }
+        return valid;
+    }
+
+    private static String key(String className, String methodSignature, int attempt) {
+        return className + "#" + methodSignature + "#" + attempt;
+    }
+}
@@ -0,0 +1,237 @@
+package zju.cst.aces.runner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * The one executor of a generation run. Classes, methods and attempts are submitted as small units to a
+ * work-stealing pool instead of to nested fixed pools, so idle workers pick up any pending unit and a slow
+ * class no longer holds threads of its own. Parents never wait for their children on a worker:
+ * they chain on the children's futures and only the caller of the run blocks. The one exception are units
+ * that need the results of their children to go on, such as the slices of a HITS attempt, see {@link #join}.
+ * maxThreads bounds the workers; LLM calls and compile/execute work additionally take separate permits.
+ * LLM permits are handed to queued requests asynchronously, in order. Workers waiting for a response or a
+ * compile permit block without compensation, only {@link #join} lets the pool add threads.
+ */
+public class WorkScheduler {
+    private final ForkJoinPool pool;
+    private final AsyncPermits llmPermits;
+    private final Semaphore compilePermits;
+
+    public WorkScheduler(int maxThreads, int llmPermits, int compilePermits) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("chatunitest-worker-" + thread.getPoolIndex());
+            return thread;
+        };
+        this.pool = new ForkJoinPool(Math.max(1, maxThreads), factory, null, true);
+        this.llmPermits = new AsyncPermits(Math.max(1, llmPermits));
+        this.compilePermits = new Semaphore(Math.max(1, compilePermits), true);
+    }
+
+    public interface Unit<T> {
+        T call() throws Exception;
+    }
+
+    public interface VoidUnit {
+        void run() throws Exception;
+    }
+
+    public <T> CompletableFuture<T> supply(Unit<T> unit) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return unit.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, pool);
+    }
+
+    public CompletableFuture<Void> submit(VoidUnit unit) {
+        return supply(() -> {
+            unit.run();
+            return null;
+        });
+    }
+
+    /**
+     * Start a call to the LLM once a permit is free. The permit is released when the call completes.
+     * Cancelling the returned future gives up the place in the queue, or cancels the call once started.
+     */
+    public <T> CompletableFuture<T> withLlmPermit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Void> permit = llmPermits.acquire();
+        // Taken either by starting the call or by a cancellation giving the granted permit back, never both
+        AtomicBoolean claimed = new AtomicBoolean();
+        AtomicReference<CompletableFuture<T>> started = new AtomicReference<>();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        permit.whenComplete((ignored, cancelled) -> {
+            if (cancelled != null || !claimed.compareAndSet(false, true)) {
+                return;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                llmPermits.release();
+                result.completeExceptionally(e);
+                return;
+            }
+            started.set(future);
+            future.whenComplete((value, e) -> {
+                llmPermits.release();
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(value);
+                }
+            });
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (!result.isCancelled() || permit.cancel(false)) {
+                return;
+            }
+            if (claimed.compareAndSet(false, true)) {
+                // Granted, but the call was not started
+                llmPermits.release();
+                return;
+            }
+            CompletableFuture<T> future = started.get();
+            if (future != null) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Run compilation or test execution once a permit is free.
+     */
+    public <T> T withCompilePermit(Unit<T> call) throws Exception {
+        return withPermit(compilePermits, call);
+    }
+
+    /**
+     * Wait for all futures, outside of the pool. Failures have to be handled by the futures themselves.
+     */
+    public void await(Collection<? extends CompletableFuture<?>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+        } catch (ExecutionException e) {
+            // Reported where the unit failed
+        }
+    }
+
+    /**
+     * Wait for the results of units forked by a running unit. A worker waiting here is compensated by the pool,
+     * so the forked units always find a thread. Waits for all of them, then rethrows the first failure.
+     */
+    public <T> List<T> join(List<CompletableFuture<T>> futures) {
+        List<T> results = new ArrayList<>();
+        RuntimeException failure = null;
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (failure == null) {
+                    failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                            : new RuntimeException("In WorkScheduler.join: " + cause);
+                }
+                results.add(null);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Wait for a future on a worker. Unlike {@link #join}, the pool does not compensate for the blocked worker,
+     * so waits for LLM responses never grow the pool beyond maxThreads. The future must not need the pool to complete.
+     */
+    public static <T> T get(CompletableFuture<T> future) throws InterruptedException, ExecutionException {
+        // CompletableFuture.get would block through ForkJoinPool.managedBlock
+        CountDownLatch done = new CountDownLatch(1);
+        future.whenComplete((value, e) -> done.countDown());
+        done.await();
+        return future.get();
+    }
+
+    /**
+     * The pool itself, for work outside of a generation run that splits into independent tasks,
+     * such as the summary arcs of the system dependence graph.
+     */
+    public Executor getExecutor() {
+        return pool;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static <T> T withPermit(Semaphore permits, Unit<T> call) throws Exception {
+        // Not compensated, permits are only held by work that does not need the pool
+        permits.acquire();
+        try {
+            return call.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * A semaphore whose waiters are futures instead of blocked threads. Permits are handed to waiters in order,
+     * cancelled waiters are skipped.
+     */
+    private static class AsyncPermits {
+        private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int available;
+
+        AsyncPermits(int permits) {
+            this.available = permits;
+        }
+
+        CompletableFuture<Void> acquire() {
+            synchronized (this) {
+                if (available == 0) {
+                    CompletableFuture<Void> waiter = new CompletableFuture<>();
+                    waiters.add(waiter);
+                    return waiter;
+                }
+                available--;
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        void release() {
+            while (true) {
+                CompletableFuture<Void> next;
+                synchronized (this) {
+                    next = waiters.poll();
+                    if (next == null) {
+                        available++;
+                        return;
+                    }
+                }
+                // A cancelled waiter does not take the permit
+                if (next.complete(null)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -76,7 +76,7 @@ public class ChatTesterRunner extends MethodRunner {
                  config.getLogger().info("Creating intention for method < " + methodInfo.methodName + " > ...");
                 List<ChatMessage> intentionPrompt = this.promptGenerator.generateMessages(promptInfo, "CHATTESTER");
                 config.useExtra = false;
-                ChatResponse response = ChatGenerator.chat(config, intentionPrompt);
+                ChatResponse response = ChatGenerator.chat(config, intentionPrompt, record);
                 String intention = ChatGenerator.getContentByResponse(response);
 
                 // set intention in user prompt
@@ -196,7 +196,7 @@ public class ChatTesterRunner extends MethodRunner {
 
     public String generateTest(List<ChatMessage> prompt, RoundRecord record) {
 
-        if (MethodRunner.isExceedMaxTokens(config.getMaxPromptTokens(), prompt)) {
+        if (MethodRunner.isExceedMaxTokens(config.getMaxPromptTokens(), config.getModel().getModelName(), prompt)) {
             config.getLogger().error("Exceed max prompt tokens: " + methodInfo.methodName + " Skipped.");
             record.setPromptToken(-1);
             record.setHasCode(false);
@@ -204,13 +204,14 @@ public class ChatTesterRunner extends MethodRunner {
         }
         config.getLogger().debug("[Prompt]:\n" + prompt);
 
-        ChatResponse response = ChatGenerator.chat(config, prompt);
+        ChatResponse response = ChatGenerator.chat(config, prompt, record);
         String content = ChatGenerator.getContentByResponse(response);
         config.getLogger().debug("[Response]:\n" + content);
         String code = ChatGenerator.extractCodeByContent(content);
 
         record.setPromptToken(response.getUsage().getPromptTokens());
         record.setResponseToken(response.getUsage().getCompletionTokens());
+        record.setCacheHit(response.isCached());
         record.setPrompt(prompt);
         record.setResponse(content);
         if (code.isEmpty()) {
@@ -45,55 +45,12 @@ public class HITSRunner extends MethodRunner {
             phase_hits.generateMethodSlice(pc);
         }
 
-        int successCount = 0;
         JsonResponseProcessor.JsonData methodSliceInfo = JsonResponseProcessor.readJsonFromFile(promptInfo.getMethodSlicePath().resolve("slice.json"));
         if (methodSliceInfo != null) {
-            // Accessing the steps
-            boolean hasErrors = false;
-            for (int i = 0; i < methodSliceInfo.getSteps().size(); i++) {
-                // Test Generation Phase
-                hasErrors = false;
-                if (methodSliceInfo.getSteps().get(i) == null) continue;
-                promptInfo.setSliceNum(i);
-                promptInfo.setSliceStep(methodSliceInfo.getSteps().get(i)); // todo 存储切片信息到promptInfo
-                phase_hits.generateSliceTest(pc); //todo 改成新的hits对切片生成单元测试方法
-                // Validation
-                if (phase_hits.validateTest(pc)) {
-                    successCount++;
-                    exportRecord(pc.getPromptInfo(), classInfo, num);
-                    continue;
-                } else {
-                    hasErrors = true;
-                }
-                if (hasErrors) {
-                    // Validation and Repair Phase
-                    for (int rounds = 1; rounds < config.getMaxRounds(); rounds++) {
-
-                        promptInfo.setRound(rounds);
-
-                        // Repair
-                        phase_hits.generateSliceTest(pc);
-                        // Validation and process
-                        if (phase_hits.validateTest(pc)) { // if passed validation
-                            successCount++;
-                            exportRecord(pc.getPromptInfo(), classInfo, num);
-                            hasErrors = false;
-                            break; // successfully
-                        }
-
-                    }
-                }
-
-                exportSliceRecord(pc.getPromptInfo(), classInfo, num, i); //todo 检测是否顺利生成信息
-            }
-            if (config.generateJsonReport) {
-                long endTime = System.nanoTime();
-                float duration = (float) (endTime - startTime) / 1_000_000_000;
-                generateJsonReportHITS(pc.getPromptInfo(), duration, methodSliceInfo.getSteps().size(), successCount);
-            }
-            return !hasErrors;
+            // Test Generation, Validation and Repair Phase of each slice
+            return runSlices(pc, methodSliceInfo.getSteps(), num, startTime,
+                    phase_hits::generateSliceTest, phase_hits::validateTest);
         }
-
         return true;
     }
 }
@@ -4,11 +4,17 @@ import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.impl.PromptConstructorImpl;
 import zju.cst.aces.api.phase.Phase;
 import zju.cst.aces.api.phase.PhaseImpl;
+import zju.cst.aces.coverage.MutationSession;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.dto.PromptInfo;
 import zju.cst.aces.runner.MethodRunner;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class MUTAPRunner extends MethodRunner {
     public MUTAPRunner(Config config, String fullClassName, MethodInfo methodInfo) throws IOException {
@@ -28,6 +34,7 @@ public class MUTAPRunner extends MethodRunner {
 
         // Validation
         if (phase.validateTest(pc)) {
+            refineWithMutants(phase, pc, 0);
             exportRecord(pc.getPromptInfo(), classInfo, num);
             return true;
         }
@@ -41,36 +48,101 @@ public class MUTAPRunner extends MethodRunner {
 
             // Validation and process
             if (phase.validateTest(pc)) { // if passed validation
+                refineWithMutants(phase, pc, rounds);
                 exportRecord(pc.getPromptInfo(), classInfo, num);
                 return true;
             }
         }
 
-        // 后面增加一段PITS的变异测试
-        if (runPitMutationTests()) {
-            exportRecord(pc.getPromptInfo(), classInfo, num);
-            return true;
-        }
-
         exportRecord(pc.getPromptInfo(), classInfo, num);
         return false;
     }
 
-    // 使用 Maven 命令执行 PIT 变异测试
-    private boolean runPitMutationTests() {
+    /**
+     * Mutation Phase: in the rounds left, give the mutants of the focal method that survive the passing test
+     * back to the LLM to refine the test, as long as the refined test passes and kills more of them.
+     * A refined test that does not is replaced by the last passing one again.
+     */
+    private void refineWithMutants(Phase phase, PromptConstructorImpl pc, int passedRound) {
+        PromptInfo promptInfo = pc.getPromptInfo();
+        List<MutationSession.Mutant> survivors = getSurvivingMutants(pc);
+        for (int rounds = passedRound + 1; rounds < config.getMaxRounds() && !survivors.isEmpty(); rounds++) {
+            config.getLogger().info(survivors.size() + " mutants of method < " + methodInfo.getMethodName() + " > survive, refining test round " + rounds);
+            String passingTest = promptInfo.getUnitTest();
+            byte[] passingFile = readTestFile(promptInfo);
+            promptInfo.setRound(rounds);
+            // The mutation prompt is the generation prompt, with the passing test and its surviving mutants
+            promptInfo.setErrorMsg(null);
+            promptInfo.setSurvivingMutants(getSession().describe(survivors, promptInfo.getFullClassName()));
+            phase.generateTest(pc);
+            promptInfo.setSurvivingMutants(null);
+            if (!phase.validateTest(pc)) {
+                restoreTest(promptInfo, passingTest, passingFile);
+                break;
+            }
+            List<MutationSession.Mutant> remaining = getSurvivingMutants(pc);
+            if (remaining.size() >= survivors.size()) {
+                restoreTest(promptInfo, passingTest, passingFile);
+                break;
+            }
+            survivors = remaining;
+        }
+    }
+
+    private static byte[] readTestFile(PromptInfo promptInfo) {
+        if (promptInfo.getTestPath() == null || !Files.exists(promptInfo.getTestPath())) {
+            return null;
+        }
         try {
-            // 执行 Maven 命令调用 PIT 变异测试
-            ProcessBuilder processBuilder = new ProcessBuilder("mvn", "pitest:mutationCoverage");
-            processBuilder.inheritIO(); // 让命令行的输出直接显示在控制台
-
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
-
-            // 根据 Maven 命令的退出码判断变异测试是否成功
-            return exitCode == 0;
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            return false;
+            return Files.readAllBytes(promptInfo.getTestPath());
+        } catch (IOException e) {
+            throw new RuntimeException("In MUTAPRunner.readTestFile: " + e);
         }
     }
+
+    private void restoreTest(PromptInfo promptInfo, String unitTest, byte[] testFile) {
+        config.getLogger().info("Refined test for method < " + methodInfo.getMethodName() + " > kills no more mutants, keeping the previous test");
+        promptInfo.setUnitTest(unitTest);
+        if (testFile == null || promptInfo.getTestPath() == null) {
+            return;
+        }
+        try {
+            Files.write(promptInfo.getTestPath(), testFile);
+        } catch (IOException e) {
+            throw new RuntimeException("In MUTAPRunner.restoreTest: " + e);
+        }
+    }
+
+    /**
+     * Run the saved passing test against the mutants of the focal method, in forked test workers of the {@link MutationSession}.
+     */
+    private List<MutationSession.Mutant> getSurvivingMutants(PromptConstructorImpl pc) {
+        PromptInfo promptInfo = pc.getPromptInfo();
+        if (methodInfo.getMethodDescriptor() == null || promptInfo.getTestPath() == null
+                || !Files.exists(promptInfo.getTestPath())) {
+            return new ArrayList<>();
+        }
+        try {
+            String testCode = new String(Files.readAllBytes(promptInfo.getTestPath()), StandardCharsets.UTF_8);
+            String methodName = methodInfo.isConstructor() ? "<init>" : methodInfo.getMethodName();
+            List<MutationSession.Mutant> mutants = getSession().run(testCode, pc.getFullTestName(),
+                    promptInfo.getFullClassName(), methodName, methodInfo.getMethodDescriptor(),
+                    config.getScheduler(), config.getForkCount());
+            List<MutationSession.Mutant> survivors = mutants.stream()
+                    .filter(mutant -> mutant.getStatus() == MutationSession.Status.SURVIVED)
+                    .collect(Collectors.toList());
+            long viable = mutants.stream().filter(mutant -> mutant.getStatus() != MutationSession.Status.NON_VIABLE).count();
+            config.getLogger().info("Mutation score of method < " + methodInfo.getMethodName() + " >: "
+                    + (viable - survivors.size()) + "/" + viable);
+            return survivors;
+        } catch (Exception e) {
+            config.getLogger().warn("Mutation analysis of method < " + methodInfo.getMethodName() + " > failed: " + e);
+            return new ArrayList<>();
+        }
+    }
+
+    private MutationSession getSession() {
+        return MutationSession.forProject(config.project.getBuildPath().toString(),
+                config.project.getCompileSourceRoots().get(0), config.classPaths);
+    }
 }
@@ -1,7 +1,5 @@
 package zju.cst.aces.runner.solution_runner;
 
-import org.benf.cfr.reader.api.CfrDriver;
-import org.benf.cfr.reader.api.OutputSinkFactory;
 import zju.cst.aces.api.Logger;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.impl.PromptConstructorImpl;
@@ -12,22 +10,20 @@ import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.dto.PromptInfo;
 import zju.cst.aces.runner.MethodRunner;
+import zju.cst.aces.util.DependencyDecompiler;
 import zju.cst.aces.util.JsonResponseProcessor;
 
 import java.io.*;
-import java.nio.file.Files;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 public class SofiaHitsRunner extends MethodRunner {
 
-    private static List<String> dependencies;
+    private static DependencyDecompiler decompiler;
     private static Logger logger;
 
     public SofiaHitsRunner(Config config, String fullClassName, MethodInfo methodInfo) throws IOException {
         super(config, fullClassName, methodInfo);
-        dependencies = new ArrayList<>(config.getDependencyPaths());
+        decompiler = DependencyDecompiler.forConfig(config);
 
         logger = config.getLogger();
     }
@@ -60,53 +56,11 @@ public class SofiaHitsRunner extends MethodRunner {
             phase_hits.generateMethodSlice(pc);
         }
 
-        int successCount = 0;
         JsonResponseProcessor.JsonData methodSliceInfo = JsonResponseProcessor.readJsonFromFile(promptInfo.getMethodSlicePath().resolve("slice.json"));
         if (methodSliceInfo != null) {
-            // Accessing the steps
-            boolean hasErrors = false;
-            for (int i = 0; i < methodSliceInfo.getSteps().size(); i++) {
-                // Test Generation Phase
-                hasErrors = false;
-                if (methodSliceInfo.getSteps().get(i) == null) continue;
-                promptInfo.setSliceNum(i);
-                promptInfo.setSliceStep(methodSliceInfo.getSteps().get(i)); // todo 存储切片信息到promptInfo
-                phase_hits.generateSliceTest(pc); //todo 改成新的hits对切片生成单元测试方法
-                // Validation
-                if (phase_hits.validateTest(pc)) {
-                    successCount++;
-                    exportRecord(pc.getPromptInfo(), classInfo, num);
-                    continue;
-                } else {
-                    hasErrors = true;
-                }
-                if (hasErrors) {
-                    // Validation and Repair Phase
-                    for (int rounds = 1; rounds < config.getMaxRounds(); rounds++) {
-
-                        promptInfo.setRound(rounds);
-
-                        // Repair
-                        phase_hits.generateSliceTest(pc);
-                        // Validation and process
-                        if (phase_hits.validateTest(pc)) { // if passed validation
-                            successCount++;
-                            exportRecord(pc.getPromptInfo(), classInfo, num);
-                            hasErrors = false;
-                            break; // successfully
-                        }
-
-                    }
-                }
-
-                exportSliceRecord(pc.getPromptInfo(), classInfo, num, i); //todo 检测是否顺利生成信息
-            }
-            if (config.generateJsonReport) {
-                long endTime = System.nanoTime();
-                float duration = (float) (endTime - startTime) / 1_000_000_000;
-                generateJsonReportHITS(pc.getPromptInfo(), duration, methodSliceInfo.getSteps().size(), successCount);
-            }
-            return !hasErrors;
+            // Test Generation, Validation and Repair Phase of each slice
+            return runSlices(pc, methodSliceInfo.getSteps(), num, startTime,
+                    phase_hits::generateSliceTest, phase_hits::validateTest);
         }
         return true;
     }
@@ -115,7 +69,7 @@ public class SofiaHitsRunner extends MethodRunner {
     Just in case the constructor is not invoked before 'generatePromptInfoWithDep'
      */
     public static void setStaticParams(Config config) {
-        dependencies = new ArrayList<>(config.getDependencyPaths());
+        decompiler = DependencyDecompiler.forConfig(config);
     }
 
     public static PromptInfo generatePromptInfoWithDep(Config config, ClassInfo classInfo, MethodInfo methodInfo) throws IOException {
@@ -215,74 +169,8 @@ public class SofiaHitsRunner extends MethodRunner {
     }
 
     public static String getSourceCode(String className) {
-        String classPath = className.replace('.', '/') + ".class";
-        for (String dependency : dependencies) {
-            try {
-                File jarFile = new File(dependency);
-                if (jarFile.exists()) {
-                    String decompiledClass = decompileClassFromJar(jarFile, classPath);
-                    if (decompiledClass != null) {
-                        return removeLeadingJavadoc(decompiledClass);
-                    }
-                }
-            } catch(Exception e) {
-                continue;
-            }
-        }
-        return null;
-    }
-
-    private static String decompileClassFromJar(File jarFile, String classPath) throws IOException {
-        // Extract .class from JAR
-        File tempClassFile = extractClassFile(jarFile, classPath);
-        if (tempClassFile == null) {
-            return null;
-        }
-
-        // Use CFR decompiler
-        StringWriter writer = new StringWriter();
-
-        OutputSinkFactory mySink = new OutputSinkFactory() {
-            @Override
-            public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> available) {
-                return Arrays.asList(SinkClass.STRING);
-            }
-
-            @Override
-            public <T> Sink<T> getSink(SinkType sinkType, SinkClass sinkClass) {
-                return message -> writer.write(message.toString() + "\n");
-            }
-        };
-
-        CfrDriver driver = new CfrDriver.Builder()
-                .withOutputSink(mySink)
-                .build();
-
-        driver.analyse(Arrays.asList(tempClassFile.getAbsolutePath()));
-
-        return writer.toString();
-    }
-
-
-    private static File extractClassFile(File jarFile, String classPath) throws IOException {
-        try (JarFile jar = new JarFile(jarFile)) {
-            JarEntry entry = jar.getJarEntry(classPath);
-            if (entry == null) {
-                return null;
-            }
-
-            File tempFile = Files.createTempFile("class", ".class").toFile();
-            try (InputStream in = jar.getInputStream(entry);
-                 OutputStream out = new FileOutputStream(tempFile)) {
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, bytesRead);
-                }
-            }
-
-            return tempFile;
-        }
+        String decompiledClass = decompiler.decompile(className, Collections.emptyMap());
+        return decompiledClass == null ? null : removeLeadingJavadoc(decompiledClass);
     }
 
     public static String removeLeadingJavadoc(String source) {
@@ -5,30 +5,35 @@ import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
-import org.benf.cfr.reader.api.CfrDriver;
-import org.benf.cfr.reader.api.OutputSinkFactory;
 import zju.cst.aces.api.Logger;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
 import zju.cst.aces.dto.PromptInfo;
 import zju.cst.aces.runner.MethodRunner;
+import zju.cst.aces.util.DependencyDecompiler;
 
 import java.io.*;
-import java.nio.file.Files;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 
 public class SofiaRunner extends MethodRunner {
 
-    private static List<String> dependencies;
+    private static DependencyDecompiler decompiler;
     private static Logger logger;
+    // CFR options for safer decompilation
+    private static final Map<String, String> CFR_OPTIONS = new HashMap<>();
+
+    static {
+        CFR_OPTIONS.put("recover", "true");
+        CFR_OPTIONS.put("hideutf", "true");
+        CFR_OPTIONS.put("decodesignatures", "false");
+        CFR_OPTIONS.put("comments", "false");
+    }
 
     public SofiaRunner(Config config, String fullClassName, MethodInfo methodInfo) throws IOException {
         super(config, fullClassName, methodInfo);
-        dependencies = new ArrayList<>(config.getDependencyPaths());
+        decompiler = DependencyDecompiler.forConfig(config);
 
         logger = config.getLogger();
     }
@@ -37,7 +42,7 @@ public class SofiaRunner extends MethodRunner {
     Just in case the constructor is not invoked before 'generatePromptInfoWithDep'
      */
     public static void setStaticParams(Config config) {
-        dependencies = new ArrayList<>(config.getDependencyPaths());
+        decompiler = DependencyDecompiler.forConfig(config);
     }
 
     public static PromptInfo generatePromptInfoWithDep(Config config, ClassInfo classInfo, MethodInfo methodInfo) throws IOException {
@@ -136,83 +141,8 @@ public class SofiaRunner extends MethodRunner {
     }
 
     public static String getSourceCode(String className, Set<String> depMethods) {
-        String classPath = className.replace('.', '/') + ".class";
-        for (String dependency : dependencies) {
-            try {
-                File jarFile = new File(dependency);
-                if (jarFile.exists()) {
-                    String decompiledClass = decompileClassFromJar(jarFile, classPath);
-                    if (decompiledClass != null) {
-                        return removeLeadingJavadoc(decompiledClass);
-                    }
-                }
-            } catch(Exception e) {
-                continue;
-            }
-        }
-        return null;
-    }
-
-    private static String decompileClassFromJar(File jarFile, String classPath) throws IOException {
-        // Extract .class from JAR
-        File tempClassFile = extractClassFile(jarFile, classPath);
-        if (tempClassFile == null) {
-            return null;
-        }
-
-        // Use CFR decompiler
-        StringWriter writer = new StringWriter();
-
-        OutputSinkFactory mySink = new OutputSinkFactory() {
-            @Override
-            public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> available) {
-                return Arrays.asList(SinkClass.STRING);
-            }
-
-            @Override
-            public <T> Sink<T> getSink(SinkType sinkType, SinkClass sinkClass) {
-                return message -> writer.write(message.toString() + "\n");
-            }
-        };
-
-        // CFR options for safer decompilation
-        Map<String, String> options = new HashMap<String, String>();
-        options.put("recover", "true");
-        options.put("hideutf", "true");
-        options.put("decodesignatures", "false");
-        options.put("comments", "false");
-
-
-        CfrDriver driver = new CfrDriver.Builder()
-                .withOptions(options)
-                .withOutputSink(mySink)
-                .build();
-
-        driver.analyse(Arrays.asList(tempClassFile.getAbsolutePath()));
-
-        return writer.toString();
-    }
-
-
-    private static File extractClassFile(File jarFile, String classPath) throws IOException {
-        try (JarFile jar = new JarFile(jarFile)) {
-            JarEntry entry = jar.getJarEntry(classPath);
-            if (entry == null) {
-                return null;
-            }
-
-            File tempFile = Files.createTempFile("class", ".class").toFile();
-            try (InputStream in = jar.getInputStream(entry);
-                 OutputStream out = new FileOutputStream(tempFile)) {
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, bytesRead);
-                }
-            }
-
-            return tempFile;
-        }
+        String decompiledClass = decompiler.decompile(className, CFR_OPTIONS);
+        return decompiledClass == null ? null : removeLeadingJavadoc(decompiledClass);
     }
 
     public static String removeWorthlessMethods(String source, Set<String> depMethods) {
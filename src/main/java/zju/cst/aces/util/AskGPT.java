@@ -2,75 +2,314 @@ package zju.cst.aces.util;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import okhttp3.MediaType;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.*;
+import okio.BufferedSource;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.config.ModelConfig;
+import zju.cst.aces.dto.ChatChoice;
 import zju.cst.aces.dto.ChatMessage;
 import zju.cst.aces.dto.ChatResponse;
+import zju.cst.aces.dto.ChatUsage;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 
+/**
+ * Client of the chat completion API. Requests are sent asynchronously on the shared OkHttp dispatcher,
+ * so many of them can be in flight without blocking a thread each. Failed requests are retried with
+ * exponential backoff and full jitter, or after the delay the server asks for in Retry-After.
+ * Every attempt takes a permit of the {@link LlmRateLimiter}, which picks the API key.
+ */
 public class AskGPT {
     private static final MediaType MEDIA_TYPE = MediaType.parse("application/json");
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    // Compact, the payload is only read by the server
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final int MAX_TRY = 5;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+    private static final String SSE_DATA = "data:";
+    private static final String SSE_DONE = "[DONE]";
+
+    private static final Dispatcher DISPATCHER = new Dispatcher();
+    private static final ConnectionPool CONNECTION_POOL = new ConnectionPool(64, 5, TimeUnit.MINUTES);
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ask-gpt-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        DISPATCHER.setMaxRequests(256);
+        DISPATCHER.setMaxRequestsPerHost(64);
+    }
+
     public Config config;
 
     public AskGPT(Config config) {
         this.config = config;
     }
 
+    /**
+     * A client builder sharing the dispatcher and connection pool of all chat requests.
+     */
+    public static OkHttpClient.Builder newClientBuilder() {
+        return new OkHttpClient.Builder()
+                .dispatcher(DISPATCHER)
+                .connectionPool(CONNECTION_POOL)
+                .connectTimeout(5, TimeUnit.MINUTES)
+                .writeTimeout(5, TimeUnit.MINUTES)
+                .readTimeout(5, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Blocking variant of {@link #askChatGPTAsync(List)}, null if all tries failed.
+     */
     public ChatResponse askChatGPT(List<ChatMessage> chatMessages) {
-        String apiKey = config.getRandomKey();
-        int maxTry = 5;
-        while (maxTry > 0) {
-            Response response = null;
-            try {
-                Map<String, Object> payload = new HashMap<>();
+        try {
+            return askChatGPTAsync(chatMessages).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In AskGPT.askChatGPT: " + e);
+        } catch (ExecutionException e) {
+            config.getLogger().debug("AskGPT: Failed to get response\n");
+            return null;
+        }
+    }
 
-//                if (Objects.equals(config.getModel(), "code-llama") || Objects.equals(config.getModel(), "code-llama-13B")) {
-//                    payload.put("max_tokens", 8092);
-//                }
+    public CompletableFuture<ChatResponse> askChatGPTAsync(List<ChatMessage> chatMessages) {
+        CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        send(new Exchange(chatMessages, false, result,
+                response -> GSON.fromJson(response.body().string(), ChatResponse.class)), 1);
+        return result;
+    }
 
-                ModelConfig modelConfig = config.getModel().getDefaultConfig();
+    /**
+     * Stream the response as server-sent events. onDelta receives each piece of content as it arrives,
+     * the future completes with the whole response once the stream is done.
+     */
+    public CompletableFuture<ChatResponse> askChatGPTStream(List<ChatMessage> chatMessages, Consumer<String> onDelta) {
+        CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        send(new Exchange(chatMessages, true, result,
+                response -> readStream(response.body().source(), onDelta)), 1);
+        return result;
+    }
 
-                payload.put("messages", chatMessages);
-                payload.put("model", modelConfig.getModelName());
-                payload.put("temperature", config.getTemperature());
-                payload.put("frequency_penalty", config.getFrequencyPenalty());
-                payload.put("presence_penalty", config.getPresencePenalty());
-                payload.put("max_tokens", config.getMaxResponseTokens());
-                String jsonPayload = GSON.toJson(payload);
+    private interface ResponseReader {
+        ChatResponse read(Response response) throws IOException;
+    }
 
-                RequestBody body = RequestBody.create(MEDIA_TYPE, jsonPayload);
-                Request request = new Request.Builder().url(modelConfig.getUrl()).post(body).addHeader("Content-Type", "application/json").addHeader("Authorization", "Bearer " + apiKey).build();
+    /**
+     * One request and its retries. The payload is built once, the key is chosen again for every attempt.
+     */
+    private class Exchange {
+        final ModelConfig modelConfig = config.getModel().getDefaultConfig();
+        final String payload;
+        final int tokens;
+        final CompletableFuture<ChatResponse> result;
+        final ResponseReader reader;
+        long waitingSince;
 
-                response = config.getClient().newCall(request).execute();
+        Exchange(List<ChatMessage> chatMessages, boolean stream, CompletableFuture<ChatResponse> result, ResponseReader reader) {
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("messages", chatMessages);
+            payload.put("model", modelConfig.getModelName());
+            payload.put("temperature", config.getTemperature());
+            payload.put("frequency_penalty", config.getFrequencyPenalty());
+            payload.put("presence_penalty", config.getPresencePenalty());
+            payload.put("max_tokens", config.getMaxResponseTokens());
+            if (stream) {
+                payload.put("stream", true);
+            }
+            this.payload = GSON.toJson(payload);
+            this.tokens = countPromptTokens(chatMessages) + config.getMaxResponseTokens();
+            this.result = result;
+            this.reader = reader;
+        }
+
+        Request buildRequest(String apiKey) {
+            RequestBody body = RequestBody.create(MEDIA_TYPE, payload);
+            return new Request.Builder().url(modelConfig.getUrl()).post(body)
+                    .addHeader("Content-Type", "application/json")
+                    .addHeader("Authorization", "Bearer " + apiKey)
+                    .build();
+        }
+    }
+
+    private int countPromptTokens(List<ChatMessage> chatMessages) {
+        String modelName = config.getModel().getModelName();
+        int tokens = 0;
+        for (ChatMessage message : chatMessages) {
+            tokens += TokenCounter.countToken(message.getContent(), modelName);
+        }
+        return tokens;
+    }
+
+    private void send(Exchange exchange, int attempt) {
+        if (exchange.result.isDone()) {
+            // Cancelled by the caller
+            return;
+        }
+        LlmRateLimiter limiter = config.getRateLimiter();
+        String modelName = exchange.modelConfig.getModelName();
+        LlmRateLimiter.Permit permit = limiter.tryAcquire(modelName, exchange.tokens);
+        if (permit == null) {
+            // Wait on the scheduler instead of holding a thread
+            if (exchange.waitingSince == 0) {
+                exchange.waitingSince = System.nanoTime();
+            }
+            SCHEDULER.schedule(() -> send(exchange, attempt), limiter.getWaitMillis(modelName, exchange.tokens), TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (exchange.waitingSince != 0) {
+            limiter.recordWait(System.nanoTime() - exchange.waitingSince);
+            exchange.waitingSince = 0;
+        }
 
-                if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-                try {
-                    Thread.sleep(config.sleepTime);
-                } catch (InterruptedException ie) {
-                    throw new RuntimeException("In AskGPT.askChatGPT: " + ie);
+        Call pending = config.getClient().newCall(exchange.buildRequest(permit.getKey()));
+        exchange.result.whenComplete((response, e) -> {
+            if (exchange.result.isCancelled()) {
+                pending.cancel();
+            }
+        });
+        pending.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                permit.releaseFailed();
+                retry(exchange, attempt, e, backoff(attempt));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                CompletableFuture<ChatResponse> result = exchange.result;
+                try (Response r = response) {
+                    if (!r.isSuccessful()) {
+                        IOException e = new IOException("Unexpected code " + r);
+                        long retryAfter = parseRetryAfter(r.header("Retry-After"));
+                        long delay = retryAfter >= 0 ? retryAfter : backoff(attempt);
+                        if (r.code() == 429) {
+                            // The limiter keeps this key back, the retry may go to another one right away
+                            permit.releaseThrottled(delay);
+                            retry(exchange, attempt, e, 0);
+                        } else if (isRetryable(r.code())) {
+                            permit.releaseFailed();
+                            retry(exchange, attempt, e, delay);
+                        } else {
+                            permit.releaseFailed();
+                            config.getLogger().error("In AskGPT.askChatGPT: " + e);
+                            result.completeExceptionally(e);
+                        }
+                        return;
+                    }
+                    if (r.body() == null) throw new IOException("Response body is null.");
+                    ChatResponse chatResponse = exchange.reader.read(r);
+                    ChatUsage usage = chatResponse.getUsage();
+                    permit.release(usage != null && usage.getTotalTokens() != null ? usage.getTotalTokens() : -1);
+                    if (config.sleepTime > 0) {
+                        SCHEDULER.schedule(() -> result.complete(chatResponse), config.sleepTime, TimeUnit.MILLISECONDS);
+                    } else {
+                        result.complete(chatResponse);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    permit.releaseFailed();
+                    retry(exchange, attempt, e, backoff(attempt));
+                }
+            }
+        });
+    }
+
+    private void retry(Exchange exchange, int attempt, Exception cause, long delayMillis) {
+        if (exchange.result.isDone()) {
+            return;
+        }
+        config.getLogger().error("In AskGPT.askChatGPT: " + cause);
+        if (attempt >= MAX_TRY) {
+            exchange.result.completeExceptionally(cause);
+            return;
+        }
+        SCHEDULER.schedule(() -> send(exchange, attempt + 1), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 409 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Full jitter: a random delay up to the exponential bound of this attempt.
+     */
+    static long backoff(int attempt) {
+        long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * Retry-After is either a number of seconds or an HTTP date, -1 if absent or malformed.
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        try {
+            return Math.min(MAX_BACKOFF_MILLIS, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                long delay = format.parse(retryAfter.trim()).getTime() - System.currentTimeMillis();
+                return Math.min(MAX_BACKOFF_MILLIS, Math.max(0, delay));
+            } catch (ParseException pe) {
+                return -1;
+            }
+        }
+    }
+
+    private static ChatResponse readStream(BufferedSource source, Consumer<String> onDelta) throws IOException {
+        ChatResponse chatResponse = new ChatResponse();
+        StringBuilder content = new StringBuilder();
+        String finishReason = null;
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith(SSE_DATA)) {
+                continue;
+            }
+            String data = line.substring(SSE_DATA.length()).trim();
+            if (data.equals(SSE_DONE)) {
+                break;
+            }
+            JsonObject chunk = JsonParser.parseString(data).getAsJsonObject();
+            if (chatResponse.getId() == null && chunk.has("id")) {
+                chatResponse.setId(chunk.get("id").getAsString());
+                chatResponse.setModel(chunk.has("model") ? chunk.get("model").getAsString() : null);
+                chatResponse.setCreated(chunk.has("created") ? chunk.get("created").getAsLong() : null);
+                chatResponse.setObject(chunk.has("object") ? chunk.get("object").getAsString() : null);
+            }
+            JsonArray choices = chunk.has("choices") ? chunk.getAsJsonArray("choices") : new JsonArray();
+            for (JsonElement choice : choices) {
+                JsonObject choiceObject = choice.getAsJsonObject();
+                JsonObject delta = choiceObject.getAsJsonObject("delta");
+                if (delta != null && delta.has("content") && !delta.get("content").isJsonNull()) {
+                    String piece = delta.get("content").getAsString();
+                    content.append(piece);
+                    if (onDelta != null) {
+                        onDelta.accept(piece);
+                    }
                 }
-                if (response.body() == null) throw new IOException("Response body is null.");
-                ChatResponse chatResponse = GSON.fromJson(response.body().string(), ChatResponse.class);
-                response.close();
-                return chatResponse;
-            } catch (IOException e) {
-                if (response != null) {
-                    response.close();
+                if (choiceObject.has("finish_reason") && !choiceObject.get("finish_reason").isJsonNull()) {
+                    finishReason = choiceObject.get("finish_reason").getAsString();
                 }
-                config.getLogger().error("In AskGPT.askChatGPT: " + e);
-                maxTry--;
             }
         }
-        config.getLogger().debug("AskGPT: Failed to get response\n");
-        return null;
+        ChatChoice choice = new ChatChoice();
+        choice.setIndex(0);
+        choice.setMessage(ChatMessage.ofAssistant(content.toString()));
+        choice.setFinishReason(finishReason);
+        chatResponse.setChoices(Collections.singletonList(choice));
+        return chatResponse;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,9 @@
 package zju.cst.aces.util;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.EnumDeclaration;
+import zju.cst.aces.parser.ParserFactory;
 
 
 import java.io.IOException;
@@ -51,7 +51,7 @@ public class ClassNameProcessor {
 
             // 读取文件内容
             final String content = new String(Files.readAllBytes(javaFilePath));
-            CompilationUnit compilationUnit = StaticJavaParser.parse(content);
+            CompilationUnit compilationUnit = ParserFactory.parse(content);
 
             // 处理类
             compilationUnit.findAll(ClassOrInterfaceDeclaration.class).stream()
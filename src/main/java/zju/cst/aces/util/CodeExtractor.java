@@ -1,9 +1,9 @@
 package zju.cst.aces.util;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import zju.cst.aces.parser.ParserFactory;
 import zju.cst.aces.runner.AbstractRunner;
 
 import java.util.*;
@@ -180,7 +180,7 @@ public class CodeExtractor {
 
     private static boolean checkMethodCorrect(String code) {
         try {
-            MethodDeclaration md = StaticJavaParser.parseMethodDeclaration(code);
+            MethodDeclaration md = ParserFactory.parseMethodDeclaration(code);
             return true;
         } catch (Exception e) {
             return false;
@@ -189,7 +189,7 @@ public class CodeExtractor {
 
     private static boolean checkClassCorrect(String code) {
         try {
-            ClassOrInterfaceType cd = StaticJavaParser.parseClassOrInterfaceType(code);
+            ClassOrInterfaceType cd = ParserFactory.parseClassOrInterfaceType(code);
             return true;
         } catch (Exception e) {
             return false;
@@ -198,7 +198,7 @@ public class CodeExtractor {
 
     private static boolean checkFileCorrect(String code) {
         try {
-            CompilationUnit cu = StaticJavaParser.parse(code);
+            CompilationUnit cu = ParserFactory.parse(code);
             return true;
         } catch (Exception e) {
             return false;
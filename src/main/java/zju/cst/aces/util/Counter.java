@@ -6,6 +6,7 @@ import com.google.gson.JsonParseException;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.dto.ClassInfo;
 import zju.cst.aces.dto.MethodInfo;
+import zju.cst.aces.parser.ClassInfoRepository;
 import zju.cst.aces.parser.ClassParser;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.runner.MethodRunner;
@@ -185,14 +186,44 @@ public class Counter {
             testMap.put(classInfo.fullClassName, methodList);
         }
 
+        exportTaskList(tmpOutputPath, testMap);
+        return testMap.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Count the methods to be tested, reading class and method infos from the shared repository in config.
+     */
+    public static int countMethod(Config config) throws IOException {
+        ClassInfoRepository repository = config.getInfoRepository();
+        Map<String, List<String>> testMap = new HashMap<>();
+        for (Path classInfoPath : repository.listClassInfoFiles()) {
+            ClassInfo classInfo = repository.getClassInfo(repository.getFullClassName(classInfoPath));
+
+            if (!filter(classInfo)) {
+                continue;
+            }
+            List<String> methodList = new ArrayList<>();
+            for (String mSig : classInfo.methodSigs.keySet()) {
+                MethodInfo methodInfo = repository.getMethodInfo(classInfo, mSig);
+                if (!filter(methodInfo)) {
+                    continue;
+                }
+                methodList.add(mSig);
+            }
+            testMap.put(classInfo.fullClassName, methodList);
+        }
+
+        exportTaskList(config.getTmpOutput(), testMap);
+        return testMap.values().stream().mapToInt(List::size).sum();
+    }
+
+    private static void exportTaskList(Path tmpOutputPath, Map<String, List<String>> testMap) throws IOException {
         Path tasklistPath = tmpOutputPath.resolve("tasklist.json");
         if(!Files.exists(tasklistPath)){
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
             String json = gson.toJson(testMap);
             Files.write(tasklistPath, json.getBytes(StandardCharsets.UTF_8));
         }
-
-        return testMap.values().stream().mapToInt(List::size).sum();
     }
 
     public static MethodInfo getMethodInfo(Path parseOutputPath, ClassInfo info, String mSig) throws IOException {
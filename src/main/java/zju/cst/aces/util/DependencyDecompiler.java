@@ -0,0 +1,187 @@
+package zju.cst.aces.util;
+
+import org.benf.cfr.reader.api.CfrDriver;
+import org.benf.cfr.reader.api.ClassFileSource;
+import org.benf.cfr.reader.api.OutputSinkFactory;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.parser.ParseManifest;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Source code of classes in the dependency jars of a project, decompiled with CFR.
+ * Classes are found through a {@link JarIndex} from class file to the first jar containing it. Class files are fed to CFR from memory, together with the other classes of
+ * the index, such as inner classes, that CFR asks for. Decompiled sources are cached on disk under tmpOutput/decompiled,
+ * keyed by the hash of the jar content, the CFR options and the class, so later runs do not decompile them again.
+ * Failures are not cached, the class is decompiled again on the next lookup.
+ */
+public class DependencyDecompiler {
+    private static final Map<String, DependencyDecompiler> DECOMPILERS = new ConcurrentHashMap<>();
+
+    private final Path cacheDir;
+    // Keyed by class file, such as a/b/C$D.class
+    private final JarIndex index;
+    private final Map<String, String> jarHashes = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> sources = new ConcurrentHashMap<>();
+
+    private DependencyDecompiler(List<String> dependencies, Path cacheDir, int threads) {
+        this.cacheDir = cacheDir;
+        this.index = new JarIndex(dependencies, threads, classFile -> classFile);
+    }
+
+    /**
+     * Get the decompiler of the dependencies of the project, shared by all runners of the project.
+     */
+    public static DependencyDecompiler forConfig(Config config) {
+        List<String> dependencies = config.getDependencyPaths() == null
+                ? new ArrayList<>() : new ArrayList<>(config.getDependencyPaths());
+        Path cacheDir = config.getTmpOutput().resolve("decompiled");
+        return DECOMPILERS.computeIfAbsent(cacheDir + File.pathSeparator + String.join(File.pathSeparator, dependencies),
+                key -> new DependencyDecompiler(dependencies, cacheDir, config.getParseThreads()));
+    }
+
+    /**
+     * Decompile the class from the first dependency jar that contains it.
+     * @return The output of CFR, null if no jar contains the class or it cannot be read or decompiled
+     */
+    public String decompile(String className, Map<String, String> options) {
+        String classPath = className.replace('.', '/') + ".class";
+        String jar = index.get(classPath);
+        if (jar == null) {
+            return null;
+        }
+        Map<String, String> sortedOptions = new TreeMap<>(options);
+        String key = jar + File.pathSeparator + classPath + File.pathSeparator + sortedOptions;
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> existing = sources.putIfAbsent(key, source);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            source.complete(load(jar, classPath, sortedOptions));
+        } catch (IOException | RuntimeException e) {
+            // Callers waiting for this attempt get null, later ones try again
+            sources.remove(key, source);
+            source.complete(null);
+        }
+        return source.join();
+    }
+
+
+    private String load(String jar, String classPath, Map<String, String> options) throws IOException {
+        Path cacheFile = cacheDir.resolve(jarHash(jar))
+                .resolve(ResponseCache.sha256(options.toString()))
+                .resolve(classPath.substring(0, classPath.length() - ".class".length()) + ".java");
+        if (Files.exists(cacheFile)) {
+            return new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8);
+        }
+        String source = runCfr(classPath, options);
+        Files.createDirectories(cacheFile.getParent());
+        Path tmp = Files.createTempFile(cacheFile.getParent(), "source", ".tmp");
+        Files.write(tmp, source.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return source;
+    }
+
+    private String jarHash(String jar) throws IOException {
+        String hash = jarHashes.get(jar);
+        if (hash == null) {
+            hash = ParseManifest.hash(new File(jar).toPath());
+            jarHashes.put(jar, hash);
+        }
+        return hash;
+    }
+
+    private String runCfr(String classPath, Map<String, String> options) {
+        StringWriter writer = new StringWriter();
+
+        OutputSinkFactory mySink = new OutputSinkFactory() {
+            @Override
+            public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> available) {
+                return Arrays.asList(SinkClass.STRING);
+            }
+
+            @Override
+            public <T> Sink<T> getSink(SinkType sinkType, SinkClass sinkClass) {
+                return message -> writer.write(message.toString() + "\n");
+            }
+        };
+
+        Map<String, String> cfrOptions = new HashMap<>(options);
+        cfrOptions.put("analyseas", "CLASS");
+        CfrDriver driver = new CfrDriver.Builder()
+                .withOptions(cfrOptions)
+                .withClassFileSource(new IndexClassFileSource())
+                .withOutputSink(mySink)
+                .build();
+
+        driver.analyse(Collections.singletonList(classPath));
+
+        return writer.toString();
+    }
+
+    private byte[] readClass(String classPath) throws IOException {
+        String jar = index.get(classPath);
+        if (jar == null) {
+            // Classes of the JDK
+            try (InputStream in = ClassLoader.getSystemResourceAsStream(classPath)) {
+                if (in == null) {
+                    throw new FileNotFoundException(classPath);
+                }
+                return readAll(in);
+            }
+        }
+        try (JarFile jarFile = new JarFile(jar)) {
+            JarEntry entry = jarFile.getJarEntry(classPath);
+            if (entry == null) {
+                throw new FileNotFoundException(classPath);
+            }
+            try (InputStream in = jarFile.getInputStream(entry)) {
+                return readAll(in);
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Serves class files to CFR from the jars of the index instead of the file system.
+     */
+    private class IndexClassFileSource implements ClassFileSource {
+        @Override
+        public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
+        }
+
+        @Override
+        public Collection<String> addJar(String jarPath) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getPossiblyRenamedPath(String path) {
+            return path;
+        }
+
+        @Override
+        public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+            return new Pair<>(readClass(path), path);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package zju.cst.aces.util;
+
+import lombok.Data;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles generated tests in memory against a fixed classpath.
+ * The standard file managers are kept across compilations, so dependency jars are opened and indexed
+ * once instead of on every repair round. A file manager is not thread-safe, so each compilation borrows
+ * one from a pool that grows up to the number of concurrent callers.
+ * Class files are collected as bytes and never written by javac itself.
+ */
+public class InMemoryCompiler {
+    private static final Map<List<String>, InMemoryCompiler> INSTANCES = new ConcurrentHashMap<>();
+
+    private final JavaCompiler compiler;
+    private final List<File> classpath;
+    private final Queue<StandardJavaFileManager> fileManagers = new ConcurrentLinkedQueue<>();
+
+    private InMemoryCompiler(List<String> classpathElements) {
+        this.compiler = ToolProvider.getSystemJavaCompiler();
+        if (this.compiler == null) {
+            throw new IllegalStateException("In InMemoryCompiler: no system java compiler, run with a JDK");
+        }
+        this.classpath = classpathElements.stream().map(File::new).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the compiler shared by all callers with the same classpath.
+     */
+    public static InMemoryCompiler forClasspath(List<String> classpathElements) {
+        List<String> key = classpathElements == null ? new ArrayList<>() : new ArrayList<>(classpathElements);
+        return INSTANCES.computeIfAbsent(key, InMemoryCompiler::new);
+    }
+
+    public CompilationResult compile(String className, String code) throws IOException {
+        SimpleJavaFileObject source = new SimpleJavaFileObject(URI.create(className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharBuffer getCharContent(boolean ignoreEncodingErrors) {
+                return CharBuffer.wrap(code);
+            }
+        };
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = borrow();
+        try {
+            MemoryFileManager memoryFileManager = new MemoryFileManager(fileManager);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, memoryFileManager, diagnostics,
+                    null, null, Collections.singletonList(source));
+            boolean success = task.call();
+            return new CompilationResult(success, diagnostics.getDiagnostics(), memoryFileManager.getClasses());
+        } finally {
+            fileManagers.offer(fileManager);
+        }
+    }
+
+    private StandardJavaFileManager borrow() throws IOException {
+        StandardJavaFileManager fileManager = fileManagers.poll();
+        if (fileManager == null) {
+            fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+            fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+        }
+        return fileManager;
+    }
+
+    @Data
+    public static class CompilationResult {
+        private final boolean success;
+        private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        // binary class name -> class file
+        private final Map<String, byte[]> classes;
+
+        /**
+         * Write the class files under the given output folder, as javac -d would.
+         */
+        public void writeTo(Path outputFolder) throws IOException {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                Path classFile = outputFolder.resolve(entry.getKey().replace(".", File.separator) + ".class");
+                Files.createDirectories(classFile.getParent());
+                Files.write(classFile, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Collects the class files of one compilation. Reading (the classpath) is delegated to the pooled manager.
+     */
+    private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        MemoryFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                   JavaFileObject.Kind kind, FileObject sibling) throws IOException {
+            if (kind != JavaFileObject.Kind.CLASS) {
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() {
+                            classes.put(className, toByteArray());
+                        }
+                    };
+                }
+            };
+        }
+
+        Map<String, byte[]> getClasses() {
+            return classes;
+        }
+
+        @Override
+        public void close() {
+            // The underlying manager is pooled and stays open
+        }
+    }
+}
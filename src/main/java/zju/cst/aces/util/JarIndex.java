@@ -0,0 +1,97 @@
+package zju.cst.aces.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Index from the classes of a list of jars to the first jar containing them, as on the classpath.
+ * Nothing is read when it is created: the index is built on the first lookup, over all jars in parallel,
+ * so a lookup no longer opens every jar in turn.
+ */
+public class JarIndex {
+    private final List<String> jars;
+    private final int threads;
+    private final Function<String, String> keyOf;
+    private volatile Map<String, String> index;
+
+    /**
+     * @param keyOf Maps the name of a class file in a jar, such as a/b/C$D.class, to the key it is looked up by,
+     *              null leaves the class out
+     */
+    public JarIndex(List<String> jars, int threads, Function<String, String> keyOf) {
+        this.jars = new ArrayList<>(jars);
+        this.threads = threads;
+        this.keyOf = keyOf;
+    }
+
+    /**
+     * The first jar containing the class of the key, null if none does.
+     */
+    public String get(String key) {
+        Map<String, String> result = index;
+        if (result == null) {
+            synchronized (this) {
+                if (index == null) {
+                    index = build();
+                }
+                result = index;
+            }
+        }
+        return result.get(key);
+    }
+
+    private Map<String, String> build() {
+        if (jars.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jars.size())));
+        try {
+            List<Future<List<String>>> entries = new ArrayList<>();
+            for (String jar : jars) {
+                entries.add(executor.submit(() -> listClassFiles(jar)));
+            }
+            Map<String, String> result = new HashMap<>();
+            for (int i = 0; i < jars.size(); i++) {
+                for (String classFile : entries.get(i).get()) {
+                    String key = keyOf.apply(classFile);
+                    if (key != null) {
+                        result.putIfAbsent(key, jars.get(i));
+                    }
+                }
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("In JarIndex.build: " + e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("In JarIndex.build: " + e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> listClassFiles(String jar) {
+        List<String> classFiles = new ArrayList<>();
+        File file = new File(jar);
+        if (!file.isFile()) {
+            return classFiles;
+        }
+        try (JarFile jarFile = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    classFiles.add(entry.getName());
+                }
+            }
+        } catch (IOException e) {
+            // Not a jar
+        }
+        return classFiles;
+    }
+}
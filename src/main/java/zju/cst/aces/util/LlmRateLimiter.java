@@ -0,0 +1,314 @@
+package zju.cst.aces.util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side rate limiting of LLM traffic, and load balancing over the API keys.
+ * Every key and model pair has two token buckets, one for requests and one for tokens per minute,
+ * and a request goes to the pair with the most headroom left. A request reserves its prompt tokens
+ * plus the response budget up front; the reservation is settled with the actual usage when it finishes.
+ * The rate of a pair is halved when the server answers 429 and recovers step by step on success,
+ * so limits lower than the configured ones are found without running into a retry storm.
+ * A limit of 0 means unlimited; with no limits at all, keys are balanced by their number of requests in flight.
+ */
+public class LlmRateLimiter {
+    private static final double MIN_RATE_FACTOR = 0.1;
+    private static final double RATE_DECREASE = 0.5;
+    private static final double RATE_INCREASE = 0.05;
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String[] apiKeys;
+    private final int requestsPerMinute;
+    private final int tokensPerMinute;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLong usedTokens = new AtomicLong();
+
+    public LlmRateLimiter(String[] apiKeys, int requestsPerMinute, int tokensPerMinute) {
+        this.apiKeys = apiKeys == null ? new String[0] : apiKeys.clone();
+        this.requestsPerMinute = Math.max(0, requestsPerMinute);
+        this.tokensPerMinute = Math.max(0, tokensPerMinute);
+    }
+
+    /**
+     * Take capacity for a request of the given number of tokens, without blocking.
+     * Returns null when no key has room for it; {@link #getWaitMillis} tells how long to wait then.
+     */
+    public Permit tryAcquire(String model, int tokens) {
+        if (apiKeys.length == 0) {
+            throw new RuntimeException("apiKeys is null!");
+        }
+        long now = System.nanoTime();
+        List<Lane> candidates = new ArrayList<>();
+        for (String key : apiKeys) {
+            candidates.add(getLane(key, model));
+        }
+        // Most headroom first, ties go to a random key to spread the load
+        Collections.shuffle(candidates);
+        candidates.sort(Comparator.comparingDouble((Lane lane) -> lane.headroom(now, tokens)).reversed());
+        for (Lane lane : candidates) {
+            if (lane.tryTake(now, tokens)) {
+                inFlight.incrementAndGet();
+                requests.incrementAndGet();
+                return new Permit(lane, tokens);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The shortest time until some key may have room for the request.
+     */
+    public long getWaitMillis(String model, int tokens) {
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        for (String key : apiKeys) {
+            wait = Math.min(wait, getLane(key, model).waitNanos(now, tokens));
+        }
+        return wait == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+    }
+
+    /**
+     * Account for the time a request waited for a permit.
+     */
+    public void recordWait(long nanos) {
+        if (nanos > 0) {
+            delayed.incrementAndGet();
+            queueWaitNanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * Counters in the Prometheus text exposition format.
+     */
+    public String exportMetrics() {
+        StringBuilder sb = new StringBuilder();
+        appendMetric(sb, "chatunitest_llm_in_flight", "gauge", "LLM requests in flight", inFlight.get());
+        appendMetric(sb, "chatunitest_llm_requests_total", "counter", "LLM requests sent", requests.get());
+        appendMetric(sb, "chatunitest_llm_throttled_total", "counter", "LLM responses with status 429", throttled.get());
+        appendMetric(sb, "chatunitest_llm_queue_wait_total", "counter", "LLM requests delayed by the rate limiter", delayed.get());
+        appendMetric(sb, "chatunitest_llm_queue_wait_seconds_total", "counter", "Time LLM requests waited for the rate limiter",
+                queueWaitNanos.get() / 1e9);
+        sb.append("# HELP chatunitest_llm_rate_factor Current fraction of the configured rate per key and model\n");
+        sb.append("# TYPE chatunitest_llm_rate_factor gauge\n");
+        for (Lane lane : lanes.values()) {
+            sb.append(String.format(Locale.ROOT, "chatunitest_llm_rate_factor{key=\"%s\",model=\"%s\"} %s%n",
+                    mask(lane.key), lane.model, lane.getRateFactor()));
+        }
+        sb.append("# HELP chatunitest_llm_key_in_flight LLM requests in flight per key and model\n");
+        sb.append("# TYPE chatunitest_llm_key_in_flight gauge\n");
+        for (Lane lane : lanes.values()) {
+            sb.append(String.format(Locale.ROOT, "chatunitest_llm_key_in_flight{key=\"%s\",model=\"%s\"} %d%n",
+                    mask(lane.key), lane.model, lane.inFlight.get()));
+        }
+        return sb.toString();
+    }
+
+    public String getStatistics() {
+        return String.format(Locale.ROOT, "LLM requests: %d, throttled: %d, delayed by rate limiter: %d (%.1fs in total)",
+                requests.get(), throttled.get(), delayed.get(), queueWaitNanos.get() / 1e9);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Tokens used by finished requests, as reported by the server or as reserved if it did not report them.
+     */
+    public long getUsedTokens() {
+        return usedTokens.get();
+    }
+
+    private Lane getLane(String key, String model) {
+        return lanes.computeIfAbsent(key + '\n' + model, k -> new Lane(key, model));
+    }
+
+    private static void appendMetric(StringBuilder sb, String name, String type, String help, Number value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String mask(String key) {
+        return key.length() <= 4 ? "****" : "****" + key.substring(key.length() - 4);
+    }
+
+    /**
+     * Capacity taken for one request. Exactly one of the release methods has to be called when it finishes.
+     */
+    public class Permit {
+        private final Lane lane;
+        private final int reservedTokens;
+        private boolean released;
+
+        private Permit(Lane lane, int reservedTokens) {
+            this.lane = lane;
+            this.reservedTokens = reservedTokens;
+        }
+
+        public String getKey() {
+            return lane.key;
+        }
+
+        /**
+         * The request succeeded, usedTokens is the total usage reported by the server or -1 if unknown.
+         */
+        public void release(int usedTokens) {
+            if (finish()) {
+                if (usedTokens >= 0) {
+                    lane.refund(reservedTokens - usedTokens);
+                }
+                LlmRateLimiter.this.usedTokens.addAndGet(usedTokens >= 0 ? usedTokens : reservedTokens);
+                lane.increaseRate();
+            }
+        }
+
+        /**
+         * The server answered 429, back off this key until retryAfterMillis has passed.
+         */
+        public void releaseThrottled(long retryAfterMillis) {
+            if (finish()) {
+                throttled.incrementAndGet();
+                lane.decreaseRate(retryAfterMillis);
+            }
+        }
+
+        /**
+         * The request failed for another reason, its reservation stays taken.
+         */
+        public void releaseFailed() {
+            finish();
+        }
+
+        private synchronized boolean finish() {
+            if (released) {
+                return false;
+            }
+            released = true;
+            lane.inFlight.decrementAndGet();
+            inFlight.decrementAndGet();
+            return true;
+        }
+    }
+
+    private class Lane {
+        private final String key;
+        private final String model;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private double rateFactor = 1.0;
+        private double requestTokens;
+        private double tokenTokens;
+        private long lastRefill = System.nanoTime();
+        private long blockedUntil;
+
+        Lane(String key, String model) {
+            this.key = key;
+            this.model = model;
+            this.requestTokens = requestsPerMinute;
+            this.tokenTokens = tokensPerMinute;
+        }
+
+        synchronized double headroom(long now, int tokens) {
+            refill(now);
+            if (now - blockedUntil < 0) {
+                return -1;
+            }
+            double headroom = 1.0;
+            if (requestsPerMinute > 0) {
+                headroom = Math.min(headroom, (requestTokens - 1) / requestsPerMinute);
+            }
+            if (tokensPerMinute > 0) {
+                headroom = Math.min(headroom, (tokenTokens - tokens) / tokensPerMinute);
+            }
+            // Without limits, or equal room, prefer the key with fewer requests in flight
+            return headroom - inFlight.get() * 1e-6;
+        }
+
+        synchronized boolean tryTake(long now, int tokens) {
+            refill(now);
+            if (now - blockedUntil < 0) {
+                return false;
+            }
+            if (requestsPerMinute > 0 && requestTokens < 1) {
+                return false;
+            }
+            // A request larger than the whole bucket may go once the bucket is full
+            if (tokensPerMinute > 0 && tokenTokens < Math.min(tokens, tokensPerMinute * rateFactor)) {
+                return false;
+            }
+            if (requestsPerMinute > 0) {
+                requestTokens -= 1;
+            }
+            if (tokensPerMinute > 0) {
+                tokenTokens -= tokens;
+            }
+            inFlight.incrementAndGet();
+            return true;
+        }
+
+        synchronized long waitNanos(long now, int tokens) {
+            refill(now);
+            long wait = Math.max(0, blockedUntil - now);
+            if (requestsPerMinute > 0 && requestTokens < 1) {
+                wait = Math.max(wait, (long) ((1 - requestTokens) / (requestsPerMinute * rateFactor) * MINUTE_NANOS));
+            }
+            if (tokensPerMinute > 0) {
+                double needed = Math.min(tokens, tokensPerMinute * rateFactor);
+                if (tokenTokens < needed) {
+                    wait = Math.max(wait, (long) ((needed - tokenTokens) / (tokensPerMinute * rateFactor) * MINUTE_NANOS));
+                }
+            }
+            return wait;
+        }
+
+        synchronized void refund(int tokens) {
+            if (tokensPerMinute > 0) {
+                tokenTokens = Math.min(tokensPerMinute * rateFactor, tokenTokens + tokens);
+            }
+        }
+
+        synchronized void decreaseRate(long retryAfterMillis) {
+            rateFactor = Math.max(MIN_RATE_FACTOR, rateFactor * RATE_DECREASE);
+            requestTokens = Math.min(requestTokens, 0);
+            tokenTokens = Math.min(tokenTokens, 0);
+            if (retryAfterMillis > 0) {
+                blockedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+            }
+        }
+
+        synchronized void increaseRate() {
+            rateFactor = Math.min(1.0, rateFactor + RATE_INCREASE);
+        }
+
+        synchronized double getRateFactor() {
+            return rateFactor;
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed <= 0) {
+                return;
+            }
+            lastRefill = now;
+            double minutes = (double) elapsed / MINUTE_NANOS;
+            if (requestsPerMinute > 0) {
+                double capacity = requestsPerMinute * rateFactor;
+                requestTokens = Math.min(capacity, requestTokens + capacity * minutes);
+            }
+            if (tokensPerMinute > 0) {
+                double capacity = tokensPerMinute * rateFactor;
+                tokenTokens = Math.min(capacity, tokenTokens + capacity * minutes);
+            }
+        }
+    }
+}
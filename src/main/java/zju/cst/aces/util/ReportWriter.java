@@ -0,0 +1,177 @@
+package zju.cst.aces.util;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Writer of the generation report. Elements are appended to generationData.jsonl, one JSON object per line:
+ * callers only serialize their element and put it on a queue, a background thread appends the queued lines to the file.
+ * {@link #export()} writes the whole report as the JSON array of generationData.json read by older tools.
+ * A generationData.json of an earlier version is taken over into the lines file the first time.
+ */
+public class ReportWriter {
+    public static final String LINES_FILE = "generationData.jsonl";
+    public static final String ARRAY_FILE = "generationData.json";
+    private static final Map<Path, ReportWriter> WRITERS = new ConcurrentHashMap<>();
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Gson PRETTY_GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final long FLUSH_INTERVAL_MILLIS = 500;
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "report-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path outputPath;
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final ScheduledFuture<?> flushing;
+    private final Thread shutdownHook = new Thread(this::flushQuietly);
+
+    private ReportWriter(Path outputPath) throws IOException {
+        this.outputPath = outputPath;
+        Files.createDirectories(outputPath);
+        importArray();
+        this.flushing = FLUSHER.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Get the writer of the report in the output directory.
+     */
+    public static ReportWriter forDirectory(Path outputPath) {
+        return WRITERS.computeIfAbsent(outputPath.toAbsolutePath().normalize(), path -> {
+            try {
+                return new ReportWriter(path);
+            } catch (IOException e) {
+                throw new RuntimeException("In ReportWriter.forDirectory: " + e);
+            }
+        });
+    }
+
+    /**
+     * Flush and close the writer of the report in the output directory, if there is one.
+     * Elements appended later go to a new writer.
+     */
+    public static void close(Path outputPath) {
+        ReportWriter writer = WRITERS.remove(outputPath.toAbsolutePath().normalize());
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Add an element to the report without waiting for it to be written.
+     */
+    public void append(Object element) {
+        queue.offer(GSON.toJson(element));
+    }
+
+    /**
+     * Write the queued elements to the lines file. They are only taken off the queue once the file is closed,
+     * so lines that failed to be written are written by the next flush.
+     */
+    public synchronized void flush() throws IOException {
+        if (queue.isEmpty()) {
+            return;
+        }
+        // Only flush removes lines, and new ones are appended at the tail, so the head is what was written
+        int written = 0;
+        try (Writer writer = Files.newBufferedWriter(outputPath.resolve(LINES_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String line : queue) {
+                writer.write(line);
+                writer.write('\n');
+                written++;
+            }
+        }
+        for (int i = 0; i < written; i++) {
+            queue.poll();
+        }
+    }
+
+    /**
+     * Flush, then write all elements of the report as a JSON array to generationData.json.
+     */
+    public synchronized void export() {
+        Path lines = outputPath.resolve(LINES_FILE);
+        Path tmp = outputPath.resolve(ARRAY_FILE + ".tmp");
+        try {
+            flush();
+            try (JsonWriter writer = PRETTY_GSON.newJsonWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+                writer.beginArray();
+                if (Files.exists(lines)) {
+                    try (BufferedReader reader = Files.newBufferedReader(lines, StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            JsonElement element;
+                            try {
+                                element = JsonParser.parseString(line);
+                            } catch (JsonParseException e) {
+                                // A line torn by a crash
+                                continue;
+                            }
+                            if (!element.isJsonNull()) {
+                                PRETTY_GSON.toJson(element, writer);
+                            }
+                        }
+                    }
+                }
+                writer.endArray();
+            }
+            Files.move(tmp, outputPath.resolve(ARRAY_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("In ReportWriter.export: " + e);
+        }
+    }
+
+    private void close() {
+        flushing.cancel(false);
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The JVM is shutting down, the hook flushes
+        }
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // The lines stay queued for the next flush
+        }
+    }
+
+    private void importArray() throws IOException {
+        Path array = outputPath.resolve(ARRAY_FILE);
+        Path lines = outputPath.resolve(LINES_FILE);
+        if (Files.exists(lines) || !Files.exists(array) || Files.size(array) == 0) {
+            return;
+        }
+        JsonElement elements;
+        try (Reader reader = Files.newBufferedReader(array, StandardCharsets.UTF_8)) {
+            elements = JsonParser.parseReader(reader);
+        } catch (JsonParseException e) {
+            return;
+        }
+        if (!elements.isJsonArray()) {
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(lines, StandardCharsets.UTF_8)) {
+            for (JsonElement element : elements.getAsJsonArray()) {
+                writer.write(GSON.toJson(element));
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package zju.cst.aces.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.dto.ChatMessage;
+import zju.cst.aces.dto.ChatResponse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of LLM responses, addressed by the content of the request.
+ * The key is a hash of the model, the sampling parameters and the normalized messages, plus the number of times
+ * the same request has been made before in this run: the n-th identical request of a rerun gets the n-th response
+ * of the earlier run, and requests beyond those go to the LLM. Retries of a prompt thus still get fresh responses.
+ * <p>
+ * Responses are appended to a log, one JSON line each, and an index maps keys to their position in the log.
+ * The index is kept in least recently used order; when the live records exceed the size cap the oldest
+ * are evicted, and the log is compacted once it is mostly dead records.
+ * The index on disk is a snapshot, records appended after it are recovered from the log when the cache is opened.
+ */
+public class ResponseCache {
+    private static final Map<Path, ResponseCache> CACHES = new ConcurrentHashMap<>();
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final String LOG_FILE = "responses.log";
+    private static final String INDEX_FILE = "index.json";
+    private static final int SNAPSHOT_INTERVAL = 64;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, AtomicInteger> occurrences = new ConcurrentHashMap<>();
+    // Access ordered, the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private RandomAccessFile log;
+    private long liveBytes;
+    private int unsavedPuts;
+    private final Thread shutdownHook = new Thread(this::close);
+
+    private static class Entry {
+        long offset;
+        int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static class Snapshot {
+        long logLength;
+        List<String> keys = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+    }
+
+    private ResponseCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        this.log = new RandomAccessFile(directory.resolve(LOG_FILE).toFile(), "rw");
+        load();
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Get the cache stored in the directory, shared by all configurations using it.
+     */
+    public static ResponseCache open(Path directory, long maxBytes) {
+        return CACHES.computeIfAbsent(directory.toAbsolutePath().normalize(), dir -> {
+            try {
+                return new ResponseCache(dir, maxBytes);
+            } catch (IOException e) {
+                throw new RuntimeException("In ResponseCache.open: " + e);
+            }
+        });
+    }
+
+    /**
+     * The key of the next request with these messages. Every call returns a new key.
+     */
+    public String nextKey(Config config, List<ChatMessage> chatMessages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(config.getModel().getDefaultConfig().getModelName()).append('\n')
+                .append(config.getTemperature()).append('\n')
+                .append(config.getFrequencyPenalty()).append('\n')
+                .append(config.getPresencePenalty()).append('\n')
+                .append(config.getMaxResponseTokens()).append('\n');
+        for (ChatMessage message : chatMessages) {
+            sb.append(normalize(message.getRole())).append('\0')
+                    .append(normalize(message.getContent())).append('\0');
+        }
+        String digest = sha256(sb.toString());
+        int occurrence = occurrences.computeIfAbsent(digest, d -> new AtomicInteger()).getAndIncrement();
+        return digest + "#" + occurrence;
+    }
+
+    /**
+     * The cached response, null on a miss. Hits are marked as {@link ChatResponse#isCached() cached}.
+     */
+    public synchronized ChatResponse get(String key) {
+        Entry entry = index.get(key);
+        if (entry == null || log == null) {
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[entry.length];
+            log.seek(entry.offset);
+            log.readFully(bytes);
+            JsonObject record = JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8)).getAsJsonObject();
+            ChatResponse response = GSON.fromJson(record.get("response"), ChatResponse.class);
+            response.setCached(true);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            // A damaged record is a miss
+            index.remove(key);
+            liveBytes -= entry.length;
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, ChatResponse response) {
+        if (log == null) {
+            return;
+        }
+        JsonObject record = new JsonObject();
+        record.addProperty("key", key);
+        record.add("response", GSON.toJsonTree(response));
+        byte[] bytes = (GSON.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            long offset = log.length();
+            log.seek(offset);
+            log.write(bytes);
+            Entry previous = index.put(key, new Entry(offset, bytes.length));
+            if (previous != null) {
+                liveBytes -= previous.length;
+            }
+            liveBytes += bytes.length;
+            evict();
+            if (++unsavedPuts >= SNAPSHOT_INTERVAL) {
+                saveIndex();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("In ResponseCache.put: " + e);
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Save the index and close the log. The next {@link #open} of the directory opens it again.
+     */
+    public synchronized void close() {
+        CACHES.remove(directory, this);
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Closed by the hook itself
+        }
+        try {
+            if (log != null) {
+                saveIndex();
+                log.close();
+                log = null;
+            }
+        } catch (IOException e) {
+            // The records are in the log, the index is rebuilt from it on the next open
+        }
+    }
+
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+        while (liveBytes > maxBytes && it.hasNext()) {
+            liveBytes -= it.next().getValue().length;
+            it.remove();
+        }
+        if (log.length() > 2 * Math.max(liveBytes, maxBytes / 2)) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the log with the live records only, in least recently used order.
+     */
+    private void compact() throws IOException {
+        Path compacted = directory.resolve(LOG_FILE + ".tmp");
+        Map<String, Entry> moved = new LinkedHashMap<>();
+        long offset = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(compacted))) {
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                byte[] bytes = new byte[e.getValue().length];
+                log.seek(e.getValue().offset);
+                log.readFully(bytes);
+                out.write(bytes);
+                moved.put(e.getKey(), new Entry(offset, bytes.length));
+                offset += bytes.length;
+            }
+        }
+        log.close();
+        Files.move(compacted, directory.resolve(LOG_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = new RandomAccessFile(directory.resolve(LOG_FILE).toFile(), "rw");
+        index.clear();
+        index.putAll(moved);
+        liveBytes = offset;
+        saveIndex();
+    }
+
+    private void load() throws IOException {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        long recovered = 0;
+        if (Files.exists(indexFile)) {
+            try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                Snapshot snapshot = GSON.fromJson(reader, Snapshot.class);
+                if (snapshot != null && snapshot.logLength <= log.length()) {
+                    for (int i = 0; i < snapshot.keys.size(); i++) {
+                        index.put(snapshot.keys.get(i), snapshot.entries.get(i));
+                        liveBytes += snapshot.entries.get(i).length;
+                    }
+                    recovered = snapshot.logLength;
+                }
+            } catch (RuntimeException e) {
+                index.clear();
+                liveBytes = 0;
+            }
+        }
+        scanLog(recovered);
+    }
+
+    /**
+     * Index the records appended after the snapshot, a torn last record is cut off.
+     */
+    private void scanLog(long from) throws IOException {
+        long offset = from;
+        long length = log.length();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(directory.resolve(LOG_FILE)))) {
+            long skipped = 0;
+            while (skipped < from) {
+                skipped += in.skip(from - skipped);
+            }
+            int b;
+            while ((b = in.read()) != -1) {
+                line.write(b);
+                if (b != '\n') {
+                    continue;
+                }
+                byte[] bytes = line.toByteArray();
+                line.reset();
+                try {
+                    String key = JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8))
+                            .getAsJsonObject().get("key").getAsString();
+                    Entry previous = index.put(key, new Entry(offset, bytes.length));
+                    if (previous != null) {
+                        liveBytes -= previous.length;
+                    }
+                    liveBytes += bytes.length;
+                } catch (RuntimeException e) {
+                    // Skip a damaged record
+                }
+                offset += bytes.length;
+            }
+        }
+        if (offset < length) {
+            log.setLength(offset);
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        Snapshot snapshot = new Snapshot();
+        snapshot.logLength = log.length();
+        for (Map.Entry<String, Entry> e : index.entrySet()) {
+            snapshot.keys.add(e.getKey());
+            snapshot.entries.add(e.getValue());
+        }
+        Path tmp = directory.resolve(INDEX_FILE + ".tmp");
+        Files.write(tmp, GSON.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        unsavedPuts = 0;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.replace("\r\n", "\n").trim();
+    }
+
+    static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("In ResponseCache.sha256: " + e);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package zju.cst.aces.util;
 
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
@@ -8,6 +7,7 @@ import com.github.javaparser.ast.expr.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import zju.cst.aces.api.config.Config;
+import zju.cst.aces.parser.ParserFactory;
 import zju.cst.aces.parser.ProjectParser;
 import zju.cst.aces.runner.AbstractRunner;
 
@@ -36,9 +36,9 @@ public class TestClassMerger {
     public TestClassMerger(Config config, String fullClassName) {
         this.config = config;
         this.sourceFullClassName = fullClassName;
-        this.sourceClassName = StaticJavaParser.parseClassOrInterfaceType(fullClassName).getNameAsString();
-        this.packageName = StaticJavaParser.parseClassOrInterfaceType(fullClassName).getScope().isPresent()?
-                StaticJavaParser.parseClassOrInterfaceType(fullClassName).getScope().get().asString() : "";
+        this.sourceClassName = ParserFactory.parseClassOrInterfaceType(fullClassName).getNameAsString();
+        this.packageName = ParserFactory.parseClassOrInterfaceType(fullClassName).getScope().isPresent()?
+                ParserFactory.parseClassOrInterfaceType(fullClassName).getScope().get().asString() : "";
     }
 
     /**
@@ -9,31 +9,27 @@ import org.apache.maven.shared.dependency.graph.DependencyNode;
 import org.codehaus.plexus.util.FileUtils;
 import org.junit.platform.engine.TestEngine;
 import org.junit.platform.engine.TestExecutionResult;
-import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
 import org.junit.platform.launcher.TestIdentifier;
 import org.junit.platform.launcher.core.LauncherConfig;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
-import org.junit.platform.launcher.core.LauncherFactory;
 import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import zju.cst.aces.coverage.CodeCoverageAnalyzer.MemoryClassLoader;
 import zju.cst.aces.dto.PromptInfo;
 import zju.cst.aces.dto.TestMessage;
 import zju.cst.aces.parser.ProjectParser;
 
-import javax.tools.*;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.net.URI;
 import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.CharBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
@@ -51,6 +47,8 @@ public class TestCompiler {
     public String testName;
     public String fullTestName;
     public String code;
+    // top-level test class name -> class files of its last successful compilation
+    private final Map<String, Map<String, byte[]>> compiledClasses = new ConcurrentHashMap<>();
 
     public TestCompiler(Path testOutputPath, Path compileOutputPath, Path targetPath, List<String> classpathElements) {
         this.code = "";
@@ -71,33 +69,29 @@ public class TestCompiler {
 
     public TestExecutionSummary executeTest(String fullTestName) {
         this.fullTestName = fullTestName;
+        // Dependencies and project classes come from the shared loader, only the test itself is loaded per run
+        ClassLoader dependencyLoader = TestLauncher.getDependencyLoader(this.classpathElements, getClass().getClassLoader());
+        MemoryClassLoader classLoader = null;
         try {
-            List<URL> urls = new ArrayList<>();
-            for (String classpath : this.classpathElements) {
-                URL url = new File(classpath).toURI().toURL();
-                urls.add(url);
-            }
-            urls.add(this.buildFolder.toURI().toURL());
+            classLoader = new MemoryClassLoader(new URL[]{this.buildFolder.toURI().toURL()}, dependencyLoader);
 //            urls.add(targetTestsFolder.toURI().toURL());
-
-            ClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[0]), getClass().getClassLoader());
+            // Prefer the class files of the last in-memory compilation over the copies in the build folder
+            Map<String, byte[]> classes = compiledClasses.get(fullTestName);
+            if (classes != null) {
+                classes.forEach(classLoader::addDefinition);
+            }
 
             LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
                     .selectors(selectClass(classLoader.loadClass(fullTestName)))
                     .build();
 
-            Launcher launcher = LauncherFactory.create();
-
-            // Register a listener to collect test execution results.
-            SummaryGeneratingListener listener = new SummaryGeneratingListener();
-            launcher.registerTestExecutionListeners(listener);
-
-            launcher.execute(request);
-
-            TestExecutionSummary summary = listener.getSummary();
-            return summary;
+            return TestLauncher.execute(request);
         } catch (Exception e) {
             throw new RuntimeException("In TestCompiler.executeTest: " + e);
+        } finally {
+            if (classLoader != null) {
+                TestLauncher.close(classLoader);
+            }
         }
     }
 
@@ -115,7 +109,15 @@ public class TestCompiler {
      * Compile test file
      */
     public boolean compileTest(String className, Path outputPath, PromptInfo promptInfo) {
-        if (this.code == "") {
+        return compileTest(className, this.code, outputPath, promptInfo);
+    }
+
+    /**
+     * Compile the given test code. Does not touch the shared code field, so a validator can be used by several
+     * runner threads at once.
+     */
+    public boolean compileTest(String className, String code, Path outputPath, PromptInfo promptInfo) {
+        if (code == null || code.isEmpty()) {
             throw new RuntimeException("In TestCompiler.compileTest: code is empty");
         }
         this.testName = className;
@@ -124,32 +126,13 @@ public class TestCompiler {
             if (!outputPath.toAbsolutePath().getParent().toFile().exists()) {
                 outputPath.toAbsolutePath().getParent().toFile().mkdirs();
             }
-            if(!buildFolder.exists()){
-                buildFolder.mkdir();
-            }
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-
-            SimpleJavaFileObject sourceJavaFileObject = new SimpleJavaFileObject(URI.create(className + ".java"),
-                    JavaFileObject.Kind.SOURCE){
-                public CharBuffer getCharContent(boolean b) {
-                    return CharBuffer.wrap(code);
-                }
-            };
-
-            Iterable<? extends JavaFileObject> compilationUnits = Arrays.asList(sourceJavaFileObject);
-            Iterable<String> options = Arrays.asList("-classpath", String.join(this.OS.contains("win") ? ";" : ":", this.classpathElements),
-                    "-d", buildFolder.toPath().toString());
-
-            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, compilationUnits);
-
-            result = task.call();
+            InMemoryCompiler.CompilationResult compilation = compileInMemory(className, code);
+            result = compilation.isSuccess();
             if (!result && promptInfo != null) {
                 TestMessage testMessage = new TestMessage();
                 List<String> errors = new ArrayList<>();
-                diagnostics.getDiagnostics().forEach(diagnostic -> {
-                    errors.add("Error in " + testName +
+                compilation.getDiagnostics().forEach(diagnostic -> {
+                    errors.add("Error in " + className +
                             ": line " + diagnostic.getLineNumber() + " : "
                             + diagnostic.getMessage(null));
                 });
@@ -157,7 +140,7 @@ public class TestCompiler {
                 testMessage.setErrorMessage(errors);
                 promptInfo.setErrorMsg(testMessage);
 
-                exportError(errors, outputPath);
+                exportError(code, errors, outputPath);
             }
         } catch (Exception e) {
             throw new RuntimeException("In TestCompiler.compileTest: " + e);
@@ -165,7 +148,26 @@ public class TestCompiler {
         return result;
     }
 
+    /**
+     * Compile in memory and keep the class files for {@link #executeTest(String)}.
+     * They are also written to the build folder, which is copied to target/test-classes later.
+     */
+    protected InMemoryCompiler.CompilationResult compileInMemory(String className, String code) throws IOException {
+        InMemoryCompiler.CompilationResult compilation = InMemoryCompiler.forClasspath(this.classpathElements).compile(className, code);
+        if (compilation.isSuccess()) {
+            compilation.getClasses().keySet().stream()
+                    .filter(name -> !name.contains("$"))
+                    .forEach(name -> compiledClasses.put(name, compilation.getClasses()));
+            compilation.writeTo(buildFolder.toPath());
+        }
+        return compilation;
+    }
+
     public void exportError(List<String> errors, Path outputPath) {
+        exportError(this.code, errors, outputPath);
+    }
+
+    public void exportError(String code, List<String> errors, Path outputPath) {
         try {
             BufferedWriter writer = new BufferedWriter(new FileWriter(outputPath.toFile()));
             writer.write(code);
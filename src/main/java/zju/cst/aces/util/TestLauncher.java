@@ -0,0 +1,119 @@
+package zju.cst.aces.util;
+
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs generated tests with a layered class loader: one cached loader per classpath for the dependencies and
+ * project classes, and a small child loader per test run that is closed afterwards.
+ * The JUnit launcher (and its engine discovery) is created once and shared by all runs.
+ * Classes of the dependency loader are shared by all runs, so static state of the project under test is too.
+ */
+public class TestLauncher {
+    private static final Map<List<String>, URLClassLoader> DEPENDENCY_LOADERS = new ConcurrentHashMap<>();
+    private static volatile Launcher launcher;
+
+    private static final AtomicLong runs = new AtomicLong();
+    private static final AtomicLong totalNanos = new AtomicLong();
+    private static final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Get the shared loader of the given classpath, a child of the plugin class loader.
+     */
+    public static URLClassLoader getDependencyLoader(List<String> classpathElements, ClassLoader parent) {
+        List<String> key = classpathElements == null ? new ArrayList<>() : new ArrayList<>(classpathElements);
+        return DEPENDENCY_LOADERS.computeIfAbsent(key, elements -> {
+            List<URL> urls = new ArrayList<>();
+            for (String classpath : elements) {
+                urls.add(toURL(new File(classpath)));
+            }
+            return new URLClassLoader(urls.toArray(new URL[0]), parent);
+        });
+    }
+
+    public static Launcher getLauncher() {
+        Launcher instance = launcher;
+        if (instance == null) {
+            synchronized (TestLauncher.class) {
+                if (launcher == null) {
+                    launcher = LauncherFactory.create();
+                }
+                instance = launcher;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Execute the request with the shared launcher. The listener is passed per run instead of being registered,
+     * so concurrent runs do not see each other's results.
+     */
+    public static TestExecutionSummary execute(LauncherDiscoveryRequest request) {
+        long start = System.nanoTime();
+        SummaryGeneratingListener listener = new SummaryGeneratingListener();
+        getLauncher().execute(request, listener);
+        long elapsed = System.nanoTime() - start;
+        runs.incrementAndGet();
+        totalNanos.addAndGet(elapsed);
+        maxNanos.accumulateAndGet(elapsed, Math::max);
+        return listener.getSummary();
+    }
+
+    public static void close(URLClassLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            // Nothing to release
+        }
+    }
+
+    /**
+     * Execution count and time, and the current metaspace usage, for the log.
+     */
+    public static String getStatistics() {
+        long count = runs.get();
+        long avgMillis = count == 0 ? 0 : totalNanos.get() / count / 1_000_000;
+        return "Test executions: " + count
+                + ", avg time: " + avgMillis + " ms"
+                + ", max time: " + maxNanos.get() / 1_000_000 + " ms"
+                + ", dependency class loaders: " + DEPENDENCY_LOADERS.size()
+                + ", metaspace used: " + getMetaspaceUsed() / (1024 * 1024) + " MB";
+    }
+
+    public static long getRuns() {
+        return runs.get();
+    }
+
+    private static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static URL toURL(File file) {
+        try {
+            return file.toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("In TestLauncher.toURL: " + e);
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package zju.cst.aces.util;
 
-import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseResult;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.parser.ParserFactory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,7 +19,6 @@ import java.util.stream.Collectors;
 
 //TODO: remove correct test case in the repair prompt.
 public class TestProcessor {
-    private static final JavaParser parser = new JavaParser();
     private String fullTestName;
 
     public TestProcessor(String fullTestName) {
@@ -56,7 +55,7 @@ public class TestProcessor {
     public String removeErrorTest(PromptInfo promptInfo, TestExecutionSummary summary) {
         String result = promptInfo.getUnitTest();
         try {
-            ParseResult<CompilationUnit> parseResult = parser.parse(result);
+            ParseResult<CompilationUnit> parseResult = ParserFactory.syntaxOnly().parse(result);
             CompilationUnit cu = parseResult.getResult().orElseThrow(()->new NoSuchElementException("CompilationUnit not present in parse result"));
             List<MethodDeclaration> methods = cu.findAll(MethodDeclaration.class);
             List<Integer> errorLineNum = getErrorLineNum(summary);
@@ -80,7 +79,7 @@ public class TestProcessor {
     public String removeCorrectTest(PromptInfo promptInfo, TestExecutionSummary summary) {
         String result = promptInfo.getUnitTest();
         try {
-            ParseResult<CompilationUnit> parseResult = parser.parse(result);
+            ParseResult<CompilationUnit> parseResult = ParserFactory.syntaxOnly().parse(result);
             CompilationUnit cu = parseResult.getResult().orElseThrow(()->new NoSuchElementException("CompilationUnit not present in parse result"));
             List<MethodDeclaration> methods = cu.findAll(MethodDeclaration.class);
             List<Integer> errorLineNum = getErrorLineNum(summary);
@@ -105,7 +104,7 @@ public class TestProcessor {
     public String addCorrectTest(PromptInfo promptInfo) {
         String result = promptInfo.getUnitTest();
         try {
-            ParseResult<CompilationUnit> parseResult = parser.parse(result);
+            ParseResult<CompilationUnit> parseResult = ParserFactory.syntaxOnly().parse(result);
             CompilationUnit cu = parseResult.getResult().orElseThrow(()->new NoSuchElementException("CompilationUnit not present in parse result"));
             promptInfo.getCorrectTests().keySet().forEach(className -> {
                 cu.getClassByName(className).ifPresent(classOrInterfaceDeclaration -> {
@@ -3,8 +3,13 @@ package zju.cst.aces.util;
 import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
 import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
 import com.knuddels.jtokkit.api.ModelType;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * @Author volunze
  * @Date 2023/6/26 1:20
@@ -14,14 +19,101 @@ import com.knuddels.jtokkit.api.ModelType;
  */
 public class TokenCounter {
 
+    private static final EncodingRegistry REGISTRY = Encodings.newDefaultEncodingRegistry();
+    private static final Map<String, Encoding> ENCODINGS = new ConcurrentHashMap<>();
+    // Long segments are counted chunk by chunk so that a budget check can stop early
+    private static final int CHUNK_SIZE = 2048;
+    private static final Encoding DEFAULT_ENCODING = REGISTRY.getEncodingForModel(ModelType.GPT_3_5_TURBO);
+
     public TokenCounter() {
     }
 
+    /**
+     * The encoding of the given model, created once per model.
+     * Models unknown to jtokkit (e.g. local models) fall back to cl100k_base.
+     */
+    public static Encoding getEncoding(String modelName) {
+        if (modelName == null) {
+            return DEFAULT_ENCODING;
+        }
+        return ENCODINGS.computeIfAbsent(modelName, name -> REGISTRY.getEncodingForModel(name)
+                .orElseGet(() -> REGISTRY.getEncoding(EncodingType.CL100K_BASE)));
+    }
+
     public static int countToken(String error_message){
-        EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
-        // Get encoding for a specific model via string name
-        Encoding encoding = registry.getEncodingForModel(ModelType.GPT_3_5_TURBO);
-        int tokenCount = encoding.countTokens(error_message);
-        return tokenCount;
+        return countToken(DEFAULT_ENCODING, error_message);
+    }
+
+    public static int countToken(String text, String modelName) {
+        return countToken(getEncoding(modelName), text);
+    }
+
+    private static int countToken(Encoding encoding, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encoding.countTokens(text);
+    }
+
+    public static Budget newBudget(int maxTokens, String modelName) {
+        return new Budget(getEncoding(modelName), maxTokens);
+    }
+
+    /**
+     * Adds up tokens segment by segment and stops counting once maxTokens is exceeded,
+     * so an oversized prompt is not fully tokenized just to find out it is too large.
+     * Long segments are split at line breaks, which may shift the count by a token per chunk.
+     * Not thread-safe, use one budget per prompt.
+     */
+    public static class Budget {
+        private final Encoding encoding;
+        private final int maxTokens;
+        private int count = 0;
+
+        Budget(Encoding encoding, int maxTokens) {
+            this.encoding = encoding;
+            this.maxTokens = maxTokens;
+        }
+
+        /**
+         * @return false once the budget is exceeded
+         */
+        public boolean add(String segment) {
+            if (isExceeded() || segment == null) {
+                return !isExceeded();
+            }
+            int start = 0;
+            while (start < segment.length() && !isExceeded()) {
+                int end = Math.min(start + CHUNK_SIZE, segment.length());
+                if (end < segment.length()) {
+                    int lineEnd = segment.indexOf('\n', end);
+                    end = lineEnd < 0 ? segment.length() : lineEnd + 1;
+                }
+                count += countToken(encoding, segment.substring(start, end));
+                start = end;
+            }
+            return !isExceeded();
+        }
+
+        public boolean addAll(List<String> segments) {
+            for (String segment : segments) {
+                if (!add(segment)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean isExceeded() {
+            return count > maxTokens;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getRemaining() {
+            return Math.max(maxTokens - count, 0);
+        }
     }
 }
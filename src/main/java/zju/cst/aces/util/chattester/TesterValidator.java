@@ -1,11 +1,11 @@
 package zju.cst.aces.util.chattester;
 
 import com.github.javaparser.ParseProblemException;
-import com.github.javaparser.StaticJavaParser;
 import lombok.Data;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import zju.cst.aces.api.Validator;
 import zju.cst.aces.dto.PromptInfo;
+import zju.cst.aces.parser.ParserFactory;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -23,7 +23,7 @@ public class TesterValidator implements Validator {
     @Override
     public boolean syntacticValidate(String code) {
         try {
-            StaticJavaParser.parse(code);
+            ParserFactory.parse(code);
             return true;
         } catch (ParseProblemException e) {
             return false;
@@ -32,8 +32,7 @@ public class TesterValidator implements Validator {
 
     @Override
     public boolean semanticValidate(String code, String className, Path outputPath, PromptInfo promptInfo) {
-        compiler.setCode(code);
-        return compiler.compileTest(className, outputPath, promptInfo);
+        return compiler.compileTest(className, code, outputPath, promptInfo);
     }
 
     @Override
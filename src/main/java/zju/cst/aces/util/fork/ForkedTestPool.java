@@ -0,0 +1,165 @@
+package zju.cst.aces.util.fork;
+
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A pool of long-lived JVMs that run generated tests out of process.
+ * Compiled test classes are sent to a worker over its stdin, the summary comes back over its stdout.
+ * A worker that times out, crashes or calls System.exit is destroyed and replaced by a fresh one on the next run,
+ * so runaway tests neither keep burning CPU nor touch the state of the plugin JVM.
+ */
+public class ForkedTestPool {
+    private static final Map<List<String>, ForkedTestPool> POOLS = new ConcurrentHashMap<>();
+
+    private final List<String> command;
+    private final Semaphore permits;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService io = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "forked-test-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ForkedTestPool(List<String> classpathElements, File buildFolder, int size) throws IOException {
+        Path classpathFile = Files.createTempFile("chatunitest-fork", ".classpath");
+        classpathFile.toFile().deleteOnExit();
+        Files.write(classpathFile, classpathElements, StandardCharsets.UTF_8);
+        this.command = Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", getWorkerClasspath(),
+                ForkedTestWorker.class.getName(),
+                classpathFile.toString(),
+                buildFolder.getAbsolutePath());
+        this.permits = new Semaphore(size);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+    }
+
+    /**
+     * Get the pool shared by all validators with the same test classpath and build folder.
+     */
+    public static ForkedTestPool get(List<String> classpathElements, File buildFolder, int size) {
+        List<String> key = new ArrayList<>(classpathElements == null ? new ArrayList<>() : classpathElements);
+        key.add(buildFolder.getAbsolutePath());
+        return POOLS.computeIfAbsent(key, k -> {
+            try {
+                return new ForkedTestPool(classpathElements == null ? new ArrayList<>() : classpathElements, buildFolder, size);
+            } catch (IOException e) {
+                throw new RuntimeException("In ForkedTestPool.get: " + e);
+            }
+        });
+    }
+
+    /**
+     * Run the test in a worker. Blocks while all workers are busy.
+     *
+     * @throws TimeoutException if the test did not finish in time, the worker has been killed
+     */
+    public TestExecutionSummary execute(String fullTestName, Map<String, byte[]> classes, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        permits.acquire();
+        Worker worker = null;
+        try {
+            worker = idle.poll();
+            if (worker == null || !worker.isAlive()) {
+                if (worker != null) {
+                    worker.destroy();
+                }
+                worker = start();
+            }
+            Worker current = worker;
+            Future<ForkedTestSummary> future = io.submit(() -> current.run(fullTestName, classes));
+            ForkedTestSummary summary = future.get(timeout, unit);
+            idle.offer(worker);
+            worker = null;
+            return summary;
+        } finally {
+            if (worker != null) {
+                worker.destroy();
+            }
+            permits.release();
+        }
+    }
+
+    public void shutdown() {
+        for (Worker worker : workers) {
+            worker.destroy();
+        }
+        io.shutdownNow();
+    }
+
+    private Worker start() throws IOException {
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        Worker worker = new Worker(process);
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * The classpath of the plugin itself: the worker needs this module, JUnit and their dependencies.
+     */
+    private static String getWorkerClasspath() {
+        Set<String> entries = new LinkedHashSet<>();
+        for (ClassLoader loader = ForkedTestPool.class.getClassLoader(); loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) loader).getURLs()) {
+                    try {
+                        entries.add(new File(url.toURI()).getPath());
+                    } catch (URISyntaxException | IllegalArgumentException e) {
+                        // Not a local file
+                    }
+                }
+            }
+        }
+        entries.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private class Worker {
+        private final Process process;
+        private ObjectOutputStream out;
+        private ObjectInputStream in;
+
+        Worker(Process process) {
+            this.process = process;
+        }
+
+        ForkedTestSummary run(String fullTestName, Map<String, byte[]> classes) throws IOException, ClassNotFoundException {
+            if (out == null) {
+                out = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()));
+                out.flush();
+                in = new ObjectInputStream(new BufferedInputStream(process.getInputStream()));
+            }
+            out.writeObject(new ForkedTestWorker.Request(fullTestName, classes));
+            out.flush();
+            out.reset();
+            ForkedTestWorker.Response response = (ForkedTestWorker.Response) in.readObject();
+            if (response.error != null) {
+                throw new IOException("In forked test worker: " + response.error);
+            }
+            return response.summary;
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        void destroy() {
+            workers.remove(this);
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package zju.cst.aces.util.fork;
+
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializable copy of a {@link TestExecutionSummary} produced by a forked worker.
+ * Exceptions are replaced by {@link RemoteTestException}, since their classes may only exist on the test classpath.
+ */
+public class ForkedTestSummary implements TestExecutionSummary, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long timeStarted;
+    private long timeFinished;
+    private long totalFailureCount;
+    private long containersFoundCount;
+    private long containersStartedCount;
+    private long containersSkippedCount;
+    private long containersAbortedCount;
+    private long containersSucceededCount;
+    private long containersFailedCount;
+    private long testsFoundCount;
+    private long testsStartedCount;
+    private long testsSkippedCount;
+    private long testsAbortedCount;
+    private long testsSucceededCount;
+    private long testsFailedCount;
+    private String summaryText;
+    private String failuresText;
+    private final List<Failure> failures = new ArrayList<>();
+    // Set when the test could not be run at all, e.g. its worker crashed
+    private boolean crashed;
+
+    public static ForkedTestSummary from(TestExecutionSummary summary) {
+        ForkedTestSummary copy = new ForkedTestSummary();
+        copy.timeStarted = summary.getTimeStarted();
+        copy.timeFinished = summary.getTimeFinished();
+        copy.totalFailureCount = summary.getTotalFailureCount();
+        copy.containersFoundCount = summary.getContainersFoundCount();
+        copy.containersStartedCount = summary.getContainersStartedCount();
+        copy.containersSkippedCount = summary.getContainersSkippedCount();
+        copy.containersAbortedCount = summary.getContainersAbortedCount();
+        copy.containersSucceededCount = summary.getContainersSucceededCount();
+        copy.containersFailedCount = summary.getContainersFailedCount();
+        copy.testsFoundCount = summary.getTestsFoundCount();
+        copy.testsStartedCount = summary.getTestsStartedCount();
+        copy.testsSkippedCount = summary.getTestsSkippedCount();
+        copy.testsAbortedCount = summary.getTestsAbortedCount();
+        copy.testsSucceededCount = summary.getTestsSucceededCount();
+        copy.testsFailedCount = summary.getTestsFailedCount();
+        StringWriter summaryText = new StringWriter();
+        summary.printTo(new PrintWriter(summaryText));
+        copy.summaryText = summaryText.toString();
+        StringWriter failuresText = new StringWriter();
+        summary.printFailuresTo(new PrintWriter(failuresText));
+        copy.failuresText = failuresText.toString();
+        for (Failure failure : summary.getFailures()) {
+            copy.failures.add(new RemoteFailure(failure.getTestIdentifier(), RemoteTestException.of(failure.getException())));
+        }
+        return copy;
+    }
+
+    /**
+     * A summary reporting the test as failed because it could not be run, so it is not taken as passing.
+     * The single failure has a frame of the test class, so the error extraction picks it up.
+     */
+    public static ForkedTestSummary failed(String fullTestName, Throwable cause) {
+        ForkedTestSummary failed = new ForkedTestSummary();
+        failed.timeStarted = System.currentTimeMillis();
+        failed.timeFinished = failed.timeStarted;
+        failed.totalFailureCount = 1;
+        failed.testsFoundCount = 1;
+        failed.testsStartedCount = 1;
+        failed.testsFailedCount = 1;
+        failed.crashed = true;
+        String description = "Test execution failed: " + cause;
+        failed.summaryText = description + System.lineSeparator();
+        failed.failuresText = failed.summaryText;
+        failed.failures.add(new RemoteFailure(null, new RemoteTestException(description,
+                new StackTraceElement[]{new StackTraceElement(fullTestName, "<execution>", null, -1)})));
+        return failed;
+    }
+
+    /**
+     * Whether the summary comes from {@link #failed}, i.e. no test of the class has actually run.
+     */
+    public static boolean isCrashed(TestExecutionSummary summary) {
+        return summary instanceof ForkedTestSummary && ((ForkedTestSummary) summary).crashed;
+    }
+
+    @Override
+    public long getTimeStarted() {
+        return timeStarted;
+    }
+
+    @Override
+    public long getTimeFinished() {
+        return timeFinished;
+    }
+
+    @Override
+    public long getTotalFailureCount() {
+        return totalFailureCount;
+    }
+
+    @Override
+    public long getContainersFoundCount() {
+        return containersFoundCount;
+    }
+
+    @Override
+    public long getContainersStartedCount() {
+        return containersStartedCount;
+    }
+
+    @Override
+    public long getContainersSkippedCount() {
+        return containersSkippedCount;
+    }
+
+    @Override
+    public long getContainersAbortedCount() {
+        return containersAbortedCount;
+    }
+
+    @Override
+    public long getContainersSucceededCount() {
+        return containersSucceededCount;
+    }
+
+    @Override
+    public long getContainersFailedCount() {
+        return containersFailedCount;
+    }
+
+    @Override
+    public long getTestsFoundCount() {
+        return testsFoundCount;
+    }
+
+    @Override
+    public long getTestsStartedCount() {
+        return testsStartedCount;
+    }
+
+    @Override
+    public long getTestsSkippedCount() {
+        return testsSkippedCount;
+    }
+
+    @Override
+    public long getTestsAbortedCount() {
+        return testsAbortedCount;
+    }
+
+    @Override
+    public long getTestsSucceededCount() {
+        return testsSucceededCount;
+    }
+
+    @Override
+    public long getTestsFailedCount() {
+        return testsFailedCount;
+    }
+
+    @Override
+    public void printTo(PrintWriter writer) {
+        writer.print(summaryText);
+        writer.flush();
+    }
+
+    @Override
+    public void printFailuresTo(PrintWriter writer) {
+        writer.print(failuresText);
+        writer.flush();
+    }
+
+    @Override
+    public void printFailuresTo(PrintWriter writer, int maxStackTraceLines) {
+        printFailuresTo(writer);
+    }
+
+    @Override
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    private static class RemoteFailure implements Failure, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final TestIdentifier testIdentifier;
+        private final Throwable exception;
+
+        RemoteFailure(TestIdentifier testIdentifier, Throwable exception) {
+            this.testIdentifier = testIdentifier;
+            this.exception = exception;
+        }
+
+        @Override
+        public TestIdentifier getTestIdentifier() {
+            return testIdentifier;
+        }
+
+        @Override
+        public Throwable getException() {
+            return exception;
+        }
+    }
+
+    /**
+     * Stands in for an exception thrown by a forked test. toString() and the stack trace are the original ones,
+     * which is what the error extraction and the repair prompts use.
+     */
+    public static class RemoteTestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String description;
+
+        private RemoteTestException(String description, StackTraceElement[] stackTrace) {
+            super(description);
+            this.description = description;
+            setStackTrace(stackTrace);
+        }
+
+        static RemoteTestException of(Throwable throwable) {
+            return new RemoteTestException(throwable.toString(), throwable.getStackTrace());
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
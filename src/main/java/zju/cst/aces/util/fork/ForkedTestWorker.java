@@ -0,0 +1,94 @@
+package zju.cst.aces.util.fork;
+
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import zju.cst.aces.coverage.CodeCoverageAnalyzer.MemoryClassLoader;
+import zju.cst.aces.util.TestLauncher;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+/**
+ * Entry point of a forked test execution JVM.
+ * Usage: ForkedTestWorker &lt;classpath file&gt; &lt;build folder&gt;
+ * Requests are read from stdin and summaries written to stdout, both as serialized objects.
+ * Anything the tests print to stdout goes to stderr instead, so it cannot corrupt the stream.
+ */
+public class ForkedTestWorker {
+
+    public static class Request implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String fullTestName;
+        final Map<String, byte[]> classes;
+
+        public Request(String fullTestName, Map<String, byte[]> classes) {
+            this.fullTestName = fullTestName;
+            this.classes = classes;
+        }
+    }
+
+    public static class Response implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final ForkedTestSummary summary;
+        final String error;
+
+        Response(ForkedTestSummary summary, String error) {
+            this.summary = summary;
+            this.error = error;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> classpathElements = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+        URL buildFolder = new File(args[1]).toURI().toURL();
+
+        PrintStream protocol = System.out;
+        System.setOut(System.err);
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(protocol));
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(System.in));
+
+        ClassLoader dependencyLoader = TestLauncher.getDependencyLoader(classpathElements, ForkedTestWorker.class.getClassLoader());
+        while (true) {
+            Request request;
+            try {
+                request = (Request) in.readObject();
+            } catch (EOFException e) {
+                return;
+            }
+            Response response;
+            try {
+                response = new Response(execute(request, dependencyLoader, buildFolder), null);
+            } catch (Throwable t) {
+                response = new Response(null, t.toString());
+            }
+            out.writeObject(response);
+            out.flush();
+            out.reset();
+        }
+    }
+
+    private static ForkedTestSummary execute(Request request, ClassLoader dependencyLoader, URL buildFolder) throws Exception {
+        MemoryClassLoader classLoader = new MemoryClassLoader(new URL[]{buildFolder}, dependencyLoader);
+        try {
+            if (request.classes != null) {
+                request.classes.forEach(classLoader::addDefinition);
+            }
+            LauncherDiscoveryRequest discoveryRequest = LauncherDiscoveryRequestBuilder.request()
+                    .selectors(selectClass(classLoader.loadClass(request.fullTestName)))
+                    .build();
+            return ForkedTestSummary.from(TestLauncher.execute(discoveryRequest));
+        } finally {
+            TestLauncher.close(classLoader);
+        }
+    }
+}
@@ -46,7 +46,7 @@ public class JavaParserUtil {
     public static NodeList<CompilationUnit> cusWithTest;
     public JavaParserUtil(Config config){
         this.config=config;
-        this.parser = config.getParser();
+        this.parser = config.parser;
         this.srcFolderPath = Paths.get(config.getProject().getBasedir().getAbsolutePath(), "src", "main", "java");
     }
     public static List<String> scanSourceDirectory(Project project) {
@@ -79,7 +79,7 @@ public class JavaParserUtil {
         for (String classPath : classPaths) {
             File file = new File(classPath);
             try {
-                ParseResult<CompilationUnit> parseResult = parser.parse(file);
+                ParseResult<CompilationUnit> parseResult = config.getParser().parse(file);
                 CompilationUnit cu = parseResult.getResult().orElseThrow(()->new NoSuchElementException("CompilationUnit not present in parse result"));
                 cus.add(cu);
             } catch (Exception e) {
@@ -191,7 +191,7 @@ public class JavaParserUtil {
         for (Path file : files) {
             try {
                 if (Files.isRegularFile(file)) {
-                    ParseResult<CompilationUnit> parseResult = parser.parse(file);
+                    ParseResult<CompilationUnit> parseResult = config.getParser().parse(file);
                     CompilationUnit cu = parseResult.getResult().orElseThrow(() -> new NoSuchElementException("parse Failed"));
                     cusWithTest.add(cu);
                 }
@@ -222,6 +222,8 @@ public class JavaParserUtil {
     }
     private SDG createSDG(NodeList<CompilationUnit> cus) {
         SDG sdg = new JSysDG();
+        // Summary arcs of independent call graph components are computed on the worker pool
+        sdg.setSummaryExecutor(config.getScheduler().getExecutor());
         sdg.build(cus);
         return sdg;
     }
@@ -1,5 +1,16 @@
 Information of the focal method is
 ```${full_fm}```.
+<#if surviving_mutants?has_content>
+
+The unit test is:
+```
+${unit_test}
+```
+
+The following mutants of the focal method survive the unit test, which passes on each of them:
+```
+${surviving_mutants}```
+</#if>
 
 Following the listed rules:
 1.Insufficient Test Coverage: If the tests do not cover the mutated code paths sufficiently, PIT won't be able to detect the mutation. This often happens if the tests miss corner cases or specific conditional branches in the mutated code.